@@ -1,45 +1,108 @@
 import ast.Ast;
+import ast.AstCache;
 import codegen.ByteCodeGenerator;
+import codegen.ClassFileWriter;
 import codegen.TranslatorVisitor;
+import lexer.Lexer;
 import optimize.Optimizer;
 import parser.Parser;
 import semantic.SemanticVisitor;
 
-import java.io.BufferedInputStream;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 
 /**
  * Created by Mengxu on 2017/1/4.
  */
 public class SimpleCompiler
 {
+    private static final String USAGE =
+            "Usage: SimpleCompiler [-S] [-lazy] [-cache dir] file, or - for stdin";
+
+    private static void checkSyntax(Parser parser)
+    {
+        if (parser == null || parser.isOK()) // null when the ast was cached
+            return;
+        parser.diagnostics().forEach(System.out::println);
+        System.exit(1);
+    }
+
     public static void main(String[] args)
     {
-        if (args.length == 0)
+        String fname = null;
+        boolean emitAssembly = false; // -S, also write the jasmin listing
+        boolean lazyBodies = false; // -lazy, parse only the methods called
+        AstCache cache = null; // -cache dir, keep parsed programs in dir
+        for (int i = 0; i < args.length; i++)
+        {
+            String arg = args[i];
+            if ("-S".equals(arg))
+                emitAssembly = true;
+            else if ("-lazy".equals(arg))
+                lazyBodies = true;
+            else if ("-cache".equals(arg))
+            {
+                if (++i == args.length)
+                {
+                    System.out.println("The option -cache needs a directory.");
+                    System.out.println(USAGE);
+                    System.exit(1);
+                }
+                cache = new AstCache(Paths.get(args[i]));
+            } else fname = arg;
+        }
+
+        if (fname == null)
         {
             System.out.println("Hello, this is a simple compiler!");
             System.out.println("Please input the file name which you want to compile");
+            System.out.println(USAGE);
             System.exit(0);
         }
 
-        final String fname = args[0];
-        InputStream fstream = null;
-        try
+        Parser parser = null;
+        Ast.Program.T prog = null;
+        String key = null; // of the source in the cache
+        if ("-".equals(fname)) // read the source from stdin, never cached
+            parser = new Parser(new Lexer(new FileInputStream(FileDescriptor.in).getChannel()));
+        else
         {
-            fstream = new BufferedInputStream(new FileInputStream(fname));
-        } catch (FileNotFoundException e)
-        {
-            System.out.println("Cannot find the file: " + fname);
-            System.exit(1);
+            try
+            {
+                ByteBuffer source = Lexer.readAll(Paths.get(fname));
+                if (cache != null)
+                {
+                    key = AstCache.key(source, lazyBodies);
+                    prog = cache.load(key);
+                }
+                if (prog == null)
+                    parser = new Parser(source);
+            } catch (IOException e)
+            {
+                System.out.println("Cannot find the file: " + fname);
+                System.exit(1);
+            }
         }
 
-        Parser parser = new Parser(fstream);
-        Ast.Program.T prog = parser.parse();
+        if (parser != null)
+        {
+            parser.lazyBodies = lazyBodies;
+            prog = parser.parse();
+            checkSyntax(parser);
+        }
 
         SemanticVisitor checker = new SemanticVisitor();
         checker.visit(prog);
+        checkSyntax(parser); // of the method bodies parsed lazily
+
+        // the checker leaves the tree unchanged, so it is cached as parsed,
+        // before the optimizer rewrites it. Programs with errors are cached
+        // too, their errors are found again without parsing
+        if (parser != null && key != null)
+            cache.store(key, prog);
 
         // if the program is correct, we generate code for it
         if (!checker.isOK())
@@ -48,16 +111,19 @@ public class SimpleCompiler
         Optimizer optimizer = new Optimizer();
         optimizer.optimize(prog);
 
-        TranslatorVisitor translator = new TranslatorVisitor();
+        TranslatorVisitor translator = new TranslatorVisitor(checker.annotations());
         translator.visit(prog);
 
-        ByteCodeGenerator generator = new ByteCodeGenerator();
-        generator.visit(translator.prog);
-
-        // ascii instructions to binary file
-        jasmin.Main.main(new String[]{translator.prog.mainClass.id + ".il"});
-        for (codegen.ast.Ast.Class.ClassSingle cla : translator.prog.classes)
-            jasmin.Main.main(new String[]{cla.id + ".il"});
+        // stack traces name the source file, as javac's classes do
+        ClassFileWriter writer = new ClassFileWriter("-".equals(fname)
+                ? null : Paths.get(fname).getFileName().toString());
+        writer.visit(translator.prog);
 
+        // ascii instructions, for debugging only (jasmin can assemble them)
+        if (emitAssembly)
+        {
+            ByteCodeGenerator generator = new ByteCodeGenerator();
+            generator.visit(translator.prog);
+        }
     }
 }
@@ -9,7 +9,13 @@ public class Ast
     public static class Type
     {
         public static abstract class T
-        {}
+        {
+            // calls the visit of v for the class of this type; the types
+            // the semantic pass makes up for errors have none
+            public void accept(Visitor v)
+            {
+            }
+        }
 
         public static class Boolean extends T
         {
@@ -20,6 +26,12 @@ public class Ast
             {
                 return "@boolean";
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
         public static class ClassType extends T
@@ -36,6 +48,12 @@ public class Ast
             {
                 return this.id;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
         public static class Int extends T
@@ -47,6 +65,12 @@ public class Ast
             {
                 return "@int";
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
     }
@@ -56,7 +80,7 @@ public class Ast
     {
         public static abstract class T
         {
-            public int lineNum;
+            public int pos; // source offset, see ProgramSingle.lines
         }
 
         public static class DecSingle extends T
@@ -64,11 +88,11 @@ public class Ast
             public Type.T type;
             public String id;
 
-            public DecSingle(Type.T type, String id, int lineNum)
+            public DecSingle(Type.T type, String id, int pos)
             {
                 this.type = type;
                 this.id = id;
-                this.lineNum = lineNum;
+                this.pos = pos;
             }
         }
     }
@@ -78,18 +102,27 @@ public class Ast
     {
         public static abstract class T
         {
-            public int lineNum;
+            public int pos; // source offset, see ProgramSingle.lines
+
+            // calls the visit of v for the class of this node
+            public abstract void accept(Visitor v);
         }
 
         public static class Add extends T
         {
             public T left, right;
 
-            public Add(T left, T right, int lineNum)
+            public Add(T left, T right, int pos)
             {
                 this.left = left;
                 this.right = right;
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
@@ -97,11 +130,17 @@ public class Ast
         {
             public T left, right;
 
-            public And(T left, T right, int lineNum)
+            public And(T left, T right, int pos)
             {
                 this.left = left;
                 this.right = right;
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
@@ -109,47 +148,55 @@ public class Ast
         {
             public T exp;
             public String id;
-            public java.util.LinkedList<T> args;
-            public String type; // type of first field "exp"
-            public java.util.LinkedList<Type.T> at; // arg's type
-            public Type.T rt;
+            public java.util.ArrayList<T> args;
+            public final int nid; // of its types, see semantic.Annotations
 
-            public Call(T exp, String id, java.util.LinkedList<T> args, int lineNum)
+            public Call(T exp, String id, java.util.ArrayList<T> args, int nid, int pos)
             {
                 this.exp = exp;
                 this.id = id;
                 this.args = args;
-                this.type = null;
-                this.lineNum = lineNum;
+                this.nid = nid;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
         public static class False extends T
         {
-            public False(int lineNum)
+            public False(int pos)
             {
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
         public static class Id extends T
         {
             public String id; // name of the id
-            public Type.T type; // type of the id
-            public boolean isField; // whether or not a field
+            public final int nid; // of its type, see semantic.Annotations
 
-            public Id(String id, int lineNum)
+            public Id(String id, int nid, int pos)
             {
                 this.id = id;
-                this.lineNum = lineNum;
+                this.nid = nid;
+                this.pos = pos;
             }
 
-            public Id(String id, Type.T type, boolean isField, int lineNum)
+            @Override
+            public void accept(Visitor v)
             {
-                this.id = id;
-                this.type = type;
-                this.isField = isField;
-                this.lineNum = lineNum;
+                v.visit(this);
             }
         }
 
@@ -157,11 +204,17 @@ public class Ast
         {
             public T left, right;
 
-            public LT(T left, T right, int lineNum)
+            public LT(T left, T right, int pos)
             {
                 this.left = left;
                 this.right = right;
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
@@ -169,10 +222,16 @@ public class Ast
         {
             public String id;
 
-            public NewObject(String id, int lineNum)
+            public NewObject(String id, int pos)
             {
                 this.id = id;
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
@@ -180,10 +239,16 @@ public class Ast
         {
             public T exp;
 
-            public Not(T exp, int lineNum)
+            public Not(T exp, int pos)
             {
                 this.exp = exp;
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
@@ -191,10 +256,16 @@ public class Ast
         {
             public int num;
 
-            public Num(int num, int lineNum)
+            public Num(int num, int pos)
             {
                 this.num = num;
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
@@ -202,19 +273,31 @@ public class Ast
         {
             public T left, right;
 
-            public Sub(T left, T right, int lineNum)
+            public Sub(T left, T right, int pos)
             {
                 this.left = left;
                 this.right = right;
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
         public static class This extends T
         {
-            public This(int lineNum)
+            public This(int pos)
             {
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
@@ -222,19 +305,31 @@ public class Ast
         {
             public T left, right;
 
-            public Times(T left, T right, int lineNum)
+            public Times(T left, T right, int pos)
             {
                 this.left = left;
                 this.right = right;
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
         public static class True extends T
         {
-            public True(int lineNum)
+            public True(int pos)
             {
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
     }
@@ -244,32 +339,47 @@ public class Ast
     {
         public static abstract class T
         {
-            public int lineNum;
+            public int pos; // source offset, see ProgramSingle.lines
+
+            // calls the visit of v for the class of this node
+            public abstract void accept(Visitor v);
         }
 
         public static class Assign extends T
         {
             public String id;
             public Exp.T exp;
-            public Type.T type; // type of the id
+            public final int nid; // of its type, see semantic.Annotations
 
-            public Assign(String id, Exp.T exp, int lineNum)
+            public Assign(String id, Exp.T exp, int nid, int pos)
             {
                 this.id = id;
                 this.exp = exp;
-                this.type = null;
-                this.lineNum = lineNum;
+                this.nid = nid;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
         public static class Block extends T
         {
-            public java.util.LinkedList<T> stms;
+            public java.util.ArrayList<T> stms;
 
-            public Block(java.util.LinkedList<T> stms, int lineNum)
+            public Block(java.util.ArrayList<T> stms, int pos)
             {
                 this.stms = stms;
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
@@ -278,12 +388,18 @@ public class Ast
             public Exp.T condition;
             public T then_stm, else_stm;
 
-            public If(Exp.T condition, T then_stm, T else_stm, int lineNum)
+            public If(Exp.T condition, T then_stm, T else_stm, int pos)
             {
                 this.condition = condition;
                 this.then_stm = then_stm;
                 this.else_stm = else_stm;
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
@@ -291,10 +407,16 @@ public class Ast
         {
             public Exp.T exp;
 
-            public Print(Exp.T exp, int lineNum)
+            public Print(Exp.T exp, int pos)
             {
                 this.exp = exp;
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
 
@@ -303,11 +425,17 @@ public class Ast
             public Exp.T condition;
             public T body;
 
-            public While(Exp.T condition, T body, int lineNum)
+            public While(Exp.T condition, T body, int pos)
             {
                 this.condition = condition;
                 this.body = body;
-                this.lineNum = lineNum;
+                this.pos = pos;
+            }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
             }
         }
     }
@@ -321,15 +449,21 @@ public class Ast
         {
             public Type.T retType;
             public String id;
-            public java.util.LinkedList<Dec.T> formals;
-            public java.util.LinkedList<Dec.T> locals;
-            public java.util.LinkedList<Stm.T> stms;
+            public java.util.ArrayList<Dec.T> formals;
+            public java.util.ArrayList<Dec.T> locals;
+            public java.util.ArrayList<Stm.T> stms;
             public Exp.T retExp;
+            // source offsets of its first token and just past its last },
+            // set by the parser, see parser.Parser.edited
+            public int start, end;
+            // set by a parser that left the body to be parsed on first
+            // use, see materialize()
+            public java.util.function.Consumer<MethodSingle> lazyBody;
 
             public MethodSingle(Type.T retType, String id,
-                                java.util.LinkedList<Dec.T> formals,
-                                java.util.LinkedList<Dec.T> locals,
-                                java.util.LinkedList<Stm.T> stms,
+                                java.util.ArrayList<Dec.T> formals,
+                                java.util.ArrayList<Dec.T> locals,
+                                java.util.ArrayList<Stm.T> stms,
                                 Exp.T retExp)
             {
                 this.retType = retType;
@@ -339,6 +473,17 @@ public class Ast
                 this.stms = stms;
                 this.retExp = retExp;
             }
+
+            // parse the body now, if that was left for later
+            public void materialize()
+            {
+                if (this.lazyBody != null)
+                {
+                    java.util.function.Consumer<MethodSingle> body = this.lazyBody;
+                    this.lazyBody = null;
+                    body.accept(this);
+                }
+            }
         }
     }
 
@@ -351,12 +496,15 @@ public class Ast
         {
             public String id;
             public String base; // null for no-base
-            public java.util.LinkedList<Dec.T> fields;
-            public java.util.LinkedList<Method.T> methods;
+            public java.util.ArrayList<Dec.T> fields;
+            public java.util.ArrayList<Method.T> methods;
+            // source offsets of its first token and just past its last },
+            // set by the parser, see parser.Parser.edited
+            public int start, end;
 
             public ClassSingle(String id, String base,
-                               java.util.LinkedList<Dec.T> fields,
-                               java.util.LinkedList<Method.T> methods)
+                               java.util.ArrayList<Dec.T> fields,
+                               java.util.ArrayList<Method.T> methods)
             {
                 this.id = id;
                 this.base = base;
@@ -375,6 +523,9 @@ public class Ast
         {
             public String id;
             public Stm.T stm;
+            // source offsets of its first token and just past its last },
+            // set by the parser, see parser.Parser.edited
+            public int start, end;
 
             public MainClassSingle(String id, Stm.T stm)
             {
@@ -392,10 +543,14 @@ public class Ast
         public static class ProgramSingle extends T
         {
             public MainClass.T mainClass;
-            public java.util.LinkedList<Class.T> classes;
+            public java.util.ArrayList<Class.T> classes;
+            public lexer.LineMap lines; // positions of the nodes, set by the parser
+            // the nids of the ids, calls and assignments in the program,
+            // set by the parser, are all below this
+            public int nids;
 
             public ProgramSingle(MainClass.T mainClass,
-                                 java.util.LinkedList<Class.T> classes)
+                                 java.util.ArrayList<Class.T> classes)
             {
                 this.mainClass = mainClass;
                 this.classes = classes;
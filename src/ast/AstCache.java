@@ -0,0 +1,125 @@
+package ast;
+
+import ast.Ast.Program;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A directory of parsed programs, encoded by AstWriter, each in a file
+ * named after the SHA-256 of its source. An unchanged source is then read
+ * back from here instead of being lexed and parsed again. A file that is
+ * missing, unreadable, from another version of the encoding or whose
+ * checksum does not match is a miss.
+ */
+public class AstCache
+{
+    private static final byte[] MAGIC = {'S', 'O', 'O', 'A'};
+    private static final int VERSION = 3; // bump when the encoding changes
+    // the magic, the version, and the CRC-32 of the encoding after them
+    private static final int HEADER = MAGIC.length + 1 + 4;
+
+    private final Path dir;
+
+    public AstCache(Path dir)
+    {
+        this.dir = dir;
+    }
+
+    // the key of a source, parsed with or without -lazy, which drops methods
+    public static String key(ByteBuffer source, boolean lazyBodies)
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e); // every JRE has SHA-256
+        }
+        digest.update(source.duplicate());
+        digest.update((byte) (lazyBodies ? 1 : 0));
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest())
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+        return sb.toString();
+    }
+
+    private static int crc(byte[] bytes, int offset, int length)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private Path file(String key)
+    {
+        return this.dir.resolve(key + ".ast");
+    }
+
+    // the program cached under key, or null
+    public Program.T load(String key)
+    {
+        byte[] bytes;
+        try
+        {
+            bytes = Files.readAllBytes(file(key));
+        } catch (IOException e)
+        {
+            return null;
+        }
+        if (bytes.length < HEADER
+                || !Arrays.equals(Arrays.copyOf(bytes, MAGIC.length), MAGIC)
+                || bytes[MAGIC.length] != VERSION
+                || ByteBuffer.wrap(bytes, MAGIC.length + 1, 4).getInt()
+                != crc(bytes, HEADER, bytes.length - HEADER))
+            return null;
+        try
+        {
+            return AstReader.decode(Arrays.copyOfRange(bytes, HEADER, bytes.length));
+        } catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    // cache program p under key. The file is written aside and moved in
+    // place, so a compiler running at the same time never reads half of it.
+    // Failing to write is not an error, the next run parses again
+    public void store(String key, Program.T p)
+    {
+        byte[] nodes = AstWriter.encode(p);
+        byte[] bytes = Arrays.copyOf(MAGIC, HEADER + nodes.length);
+        bytes[MAGIC.length] = VERSION;
+        ByteBuffer.wrap(bytes, MAGIC.length + 1, 4).putInt(crc(nodes, 0, nodes.length));
+        System.arraycopy(nodes, 0, bytes, HEADER, nodes.length);
+
+        Path tmp = null;
+        try
+        {
+            Files.createDirectories(this.dir);
+            tmp = Files.createTempFile(this.dir, key, ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, file(key), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e)
+        {
+            try
+            {
+                if (tmp != null)
+                    Files.deleteIfExists(tmp);
+            } catch (IOException ignored)
+            {
+            }
+        }
+    }
+}
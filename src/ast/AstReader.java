@@ -0,0 +1,267 @@
+package ast;
+
+import ast.Ast.Dec;
+import ast.Ast.Exp;
+import ast.Ast.MainClass;
+import ast.Ast.Method;
+import ast.Ast.Program;
+import ast.Ast.Stm;
+import ast.Ast.Type;
+import lexer.LineMap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static ast.AstWriter.*;
+
+/**
+ * Builds back a program from the bytes AstWriter encoded it into. The
+ * bytes are trusted to come from AstWriter; anything else makes decode()
+ * throw an IllegalArgumentException. The ids, calls and assignments are
+ * given nids in the order they are read.
+ */
+public class AstReader
+{
+    private final byte[] bytes;
+    private int pos;
+    private int lastPos; // of the node read last
+    private int nids; // handed out to the nodes read so far
+    private String[] names;
+
+    private AstReader(byte[] bytes)
+    {
+        this.bytes = bytes;
+    }
+
+    public static Program.T decode(byte[] bytes)
+    {
+        try
+        {
+            return new AstReader(bytes).readProgram();
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e)
+        {
+            throw new IllegalArgumentException("Malformed ast encoding", e);
+        }
+    }
+
+    private int readByte()
+    {
+        return this.bytes[this.pos++] & 0xff;
+    }
+
+    private int readInt()
+    {
+        int v = 0;
+        for (int shift = 0; ; shift += 7)
+        {
+            int b = readByte();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return v;
+        }
+    }
+
+    private int readSigned()
+    {
+        int v = readInt();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private int readPos()
+    {
+        return this.lastPos += readSigned();
+    }
+
+    // the start and end of a method or class, see AstWriter.range
+    private int[] readRange()
+    {
+        int start = readPos();
+        return new int[]{start, start + readInt()};
+    }
+
+    private String readName()
+    {
+        int index = readInt();
+        return index == 0 ? null : this.names[index - 1];
+    }
+
+    private Type.T readType()
+    {
+        int tag = readByte();
+        switch (tag)
+        {
+            case NULL:
+                return null;
+            case BOOLEAN:
+                return new Type.Boolean();
+            case CLASS_TYPE:
+                return new Type.ClassType(readName());
+            case INT:
+                return new Type.Int();
+            default:
+                throw new IllegalArgumentException("Bad type tag " + tag);
+        }
+    }
+
+    private ArrayList<Dec.T> readDecs()
+    {
+        int n = readInt();
+        ArrayList<Dec.T> decs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+        {
+            int tag = readByte();
+            if (tag != DEC)
+                throw new IllegalArgumentException("Bad declaration tag " + tag);
+            int pos = readPos();
+            Type.T type = readType();
+            decs.add(new Dec.DecSingle(type, readName(), pos));
+        }
+        return decs;
+    }
+
+    private Exp.T readExp()
+    {
+        int tag = readByte();
+        if (tag == NULL)
+            return null;
+        int pos = readPos();
+        switch (tag)
+        {
+            case ADD:
+                return new Exp.Add(readExp(), readExp(), pos);
+            case AND:
+                return new Exp.And(readExp(), readExp(), pos);
+            case CALL:
+            {
+                Exp.T exp = readExp();
+                String id = readName();
+                int n = readInt();
+                ArrayList<Exp.T> args = new ArrayList<>(n);
+                for (int i = 0; i < n; i++)
+                    args.add(readExp());
+                return new Exp.Call(exp, id, args, this.nids++, pos);
+            }
+            case FALSE:
+                return new Exp.False(pos);
+            case ID:
+                return new Exp.Id(readName(), this.nids++, pos);
+            case LT:
+                return new Exp.LT(readExp(), readExp(), pos);
+            case NEW_OBJECT:
+                return new Exp.NewObject(readName(), pos);
+            case NOT:
+                return new Exp.Not(readExp(), pos);
+            case NUM:
+                return new Exp.Num(readSigned(), pos);
+            case SUB:
+                return new Exp.Sub(readExp(), readExp(), pos);
+            case THIS:
+                return new Exp.This(pos);
+            case TIMES:
+                return new Exp.Times(readExp(), readExp(), pos);
+            case TRUE:
+                return new Exp.True(pos);
+            default:
+                throw new IllegalArgumentException("Bad expression tag " + tag);
+        }
+    }
+
+    private ArrayList<Stm.T> readStms()
+    {
+        int n = readInt();
+        ArrayList<Stm.T> stms = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            stms.add(readStm());
+        return stms;
+    }
+
+    private Stm.T readStm()
+    {
+        int tag = readByte();
+        if (tag == NULL)
+            return null;
+        int pos = readPos();
+        switch (tag)
+        {
+            case ASSIGN:
+            {
+                String id = readName();
+                return new Stm.Assign(id, readExp(), this.nids++, pos);
+            }
+            case BLOCK:
+                return new Stm.Block(readStms(), pos);
+            case IF:
+                return new Stm.If(readExp(), readStm(), readStm(), pos);
+            case PRINT:
+                return new Stm.Print(readExp(), pos);
+            case WHILE:
+                return new Stm.While(readExp(), readStm(), pos);
+            default:
+                throw new IllegalArgumentException("Bad statement tag " + tag);
+        }
+    }
+
+    private Method.T readMethod()
+    {
+        int[] range = readRange();
+        Type.T retType = readType();
+        String id = readName();
+        ArrayList<Dec.T> formals = readDecs();
+        ArrayList<Dec.T> locals = readDecs();
+        ArrayList<Stm.T> stms = readStms();
+        Method.MethodSingle m = new Method.MethodSingle(retType, id, formals,
+                locals, stms, readExp());
+        m.start = range[0];
+        m.end = range[1];
+        return m;
+    }
+
+    private Ast.Class.T readClass()
+    {
+        int[] range = readRange();
+        String id = readName();
+        String base = readName();
+        ArrayList<Dec.T> fields = readDecs();
+        int n = readInt();
+        ArrayList<Method.T> methods = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            methods.add(readMethod());
+        Ast.Class.ClassSingle c = new Ast.Class.ClassSingle(id, base, fields, methods);
+        c.start = range[0];
+        c.end = range[1];
+        return c;
+    }
+
+    private Program.T readProgram()
+    {
+        // names are interned, as the lexer interns them
+        this.names = new String[readInt()];
+        for (int i = 0; i < this.names.length; i++)
+        {
+            int length = readInt();
+            this.names[i] = new String(this.bytes, this.pos, length,
+                    StandardCharsets.ISO_8859_1).intern();
+            this.pos += length;
+        }
+
+        int n = readInt();
+        LineMap lines = new LineMap(readInt());
+        for (int line = 2; line <= n; line++)
+            lines.add(readInt());
+
+        int[] range = readRange();
+        String mainId = readName();
+        MainClass.MainClassSingle mainClass = new MainClass.MainClassSingle(mainId, readStm());
+        mainClass.start = range[0];
+        mainClass.end = range[1];
+        n = readInt();
+        ArrayList<Ast.Class.T> classes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            classes.add(readClass());
+
+        Program.ProgramSingle p = new Program.ProgramSingle(mainClass, classes);
+        p.lines = lines;
+        p.nids = this.nids;
+        return p;
+    }
+}
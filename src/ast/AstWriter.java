@@ -0,0 +1,362 @@
+package ast;
+
+import ast.Ast.Dec;
+import ast.Ast.Exp;
+import ast.Ast.MainClass;
+import ast.Ast.Method;
+import ast.Ast.Program;
+import ast.Ast.Stm;
+import ast.Ast.Type;
+import lexer.LineMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Encodes a parsed program into bytes that AstReader turns back into the
+ * same tree: a table of all the names in it, the LineMap, then every node
+ * in preorder as a one byte tag followed by its fields. Ints are written
+ * as varints and names as indices into the table. Everything the parser
+ * builds is kept but the nids, which AstReader hands out again.
+ */
+public class AstWriter implements Visitor
+{
+    // node tags, 0 is a missing node
+    static final int NULL = 0;
+    static final int BOOLEAN = 1, CLASS_TYPE = 2, INT = 3;
+    static final int DEC = 4;
+    static final int ADD = 5, AND = 6, CALL = 7, FALSE = 8, ID = 9, LT = 10,
+            NEW_OBJECT = 11, NOT = 12, NUM = 13, SUB = 14, THIS = 15,
+            TIMES = 16, TRUE = 17;
+    static final int ASSIGN = 18, BLOCK = 19, IF = 20, PRINT = 21, WHILE = 22;
+
+    private byte[] bytes = new byte[4096];
+    private int size;
+    private int lastPos; // of the node written last
+    private HashMap<String, Integer> names = new HashMap<>();
+    private ArrayList<String> table = new ArrayList<>();
+
+    // the encoding of program p
+    public static byte[] encode(Program.T p)
+    {
+        AstWriter nodes = new AstWriter();
+        nodes.visit(p);
+
+        AstWriter out = new AstWriter();
+        out.writeInt(nodes.table.size());
+        for (String name : nodes.table)
+        {
+            out.writeInt(name.length());
+            for (int i = 0; i < name.length(); i++)
+                out.writeByte(name.charAt(i));
+        }
+        LineMap lines = ((Program.ProgramSingle) p).lines;
+        out.writeInt(lines.size());
+        for (int line = 1; line <= lines.size(); line++)
+            out.writeInt(lines.start(line));
+        out.writeBytes(nodes.bytes, nodes.size);
+        return Arrays.copyOf(out.bytes, out.size);
+    }
+
+    private void writeByte(int b)
+    {
+        if (this.size == this.bytes.length)
+            this.bytes = Arrays.copyOf(this.bytes, this.size * 2);
+        this.bytes[this.size++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] b, int n)
+    {
+        if (this.size + n > this.bytes.length)
+            this.bytes = Arrays.copyOf(this.bytes, Math.max(this.size * 2, this.size + n));
+        System.arraycopy(b, 0, this.bytes, this.size, n);
+        this.size += n;
+    }
+
+    // seven bits at a time, the high bit set on all but the last byte
+    private void writeInt(int v)
+    {
+        while ((v & ~0x7f) != 0)
+        {
+            writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        writeByte(v);
+    }
+
+    private void writeSigned(int v)
+    {
+        writeInt((v << 1) ^ (v >> 31));
+    }
+
+    // a name by its index in the table, counted from 1 so 0 can be null
+    private void writeName(String name)
+    {
+        if (name == null)
+        {
+            writeInt(0);
+            return;
+        }
+        Integer index = this.names.get(name);
+        if (index == null)
+        {
+            this.table.add(name);
+            index = this.table.size();
+            this.names.put(name, index);
+        }
+        writeInt(index);
+    }
+
+    // positions are written as the distance from the one before, which in
+    // preorder is mostly short, and zigzag so that a step back is too
+    private void node(int tag, int pos)
+    {
+        writeByte(tag);
+        writeSigned(pos - this.lastPos);
+        this.lastPos = pos;
+    }
+
+    // the source range of a method or class, for Parser.edited
+    private void range(int start, int end)
+    {
+        writeSigned(start - this.lastPos);
+        writeInt(end - start);
+        this.lastPos = start;
+    }
+
+    private void binary(int tag, Exp.T left, Exp.T right, int pos)
+    {
+        node(tag, pos);
+        this.visit(left);
+        this.visit(right);
+    }
+
+    private void decs(ArrayList<Dec.T> decs)
+    {
+        writeInt(decs.size());
+        decs.forEach(this::visit);
+    }
+
+    private void stms(ArrayList<Stm.T> stms)
+    {
+        writeInt(stms.size());
+        stms.forEach(this::visit);
+    }
+
+    @Override
+    public void visit(Type.T t)
+    {
+        if (t == null)
+            writeByte(NULL);
+        else Visitor.super.visit(t);
+    }
+
+    @Override
+    public void visit(Type.Boolean t)
+    {
+        writeByte(BOOLEAN);
+    }
+
+    @Override
+    public void visit(Type.ClassType t)
+    {
+        writeByte(CLASS_TYPE);
+        writeName(t.id);
+    }
+
+    @Override
+    public void visit(Type.Int t)
+    {
+        writeByte(INT);
+    }
+
+    @Override
+    public void visit(Dec.DecSingle d)
+    {
+        node(DEC, d.pos);
+        this.visit(d.type);
+        writeName(d.id);
+    }
+
+    @Override
+    public void visit(Exp.T e)
+    {
+        if (e == null)
+            writeByte(NULL);
+        else Visitor.super.visit(e);
+    }
+
+    @Override
+    public void visit(Exp.Add e)
+    {
+        binary(ADD, e.left, e.right, e.pos);
+    }
+
+    @Override
+    public void visit(Exp.And e)
+    {
+        binary(AND, e.left, e.right, e.pos);
+    }
+
+    @Override
+    public void visit(Exp.Call e)
+    {
+        node(CALL, e.pos);
+        this.visit(e.exp);
+        writeName(e.id);
+        writeInt(e.args.size());
+        e.args.forEach(this::visit);
+    }
+
+    @Override
+    public void visit(Exp.False e)
+    {
+        node(FALSE, e.pos);
+    }
+
+    @Override
+    public void visit(Exp.Id e)
+    {
+        node(ID, e.pos);
+        writeName(e.id);
+    }
+
+    @Override
+    public void visit(Exp.LT e)
+    {
+        binary(LT, e.left, e.right, e.pos);
+    }
+
+    @Override
+    public void visit(Exp.NewObject e)
+    {
+        node(NEW_OBJECT, e.pos);
+        writeName(e.id);
+    }
+
+    @Override
+    public void visit(Exp.Not e)
+    {
+        node(NOT, e.pos);
+        this.visit(e.exp);
+    }
+
+    // signed, for the negative numbers folded in by the parser
+    @Override
+    public void visit(Exp.Num e)
+    {
+        node(NUM, e.pos);
+        writeSigned(e.num);
+    }
+
+    @Override
+    public void visit(Exp.Sub e)
+    {
+        binary(SUB, e.left, e.right, e.pos);
+    }
+
+    @Override
+    public void visit(Exp.This e)
+    {
+        node(THIS, e.pos);
+    }
+
+    @Override
+    public void visit(Exp.Times e)
+    {
+        binary(TIMES, e.left, e.right, e.pos);
+    }
+
+    @Override
+    public void visit(Exp.True e)
+    {
+        node(TRUE, e.pos);
+    }
+
+    @Override
+    public void visit(Stm.T s)
+    {
+        if (s == null)
+            writeByte(NULL);
+        else Visitor.super.visit(s);
+    }
+
+    @Override
+    public void visit(Stm.Assign s)
+    {
+        node(ASSIGN, s.pos);
+        writeName(s.id);
+        this.visit(s.exp);
+    }
+
+    @Override
+    public void visit(Stm.Block s)
+    {
+        node(BLOCK, s.pos);
+        stms(s.stms);
+    }
+
+    @Override
+    public void visit(Stm.If s)
+    {
+        node(IF, s.pos);
+        this.visit(s.condition);
+        this.visit(s.then_stm);
+        this.visit(s.else_stm);
+    }
+
+    @Override
+    public void visit(Stm.Print s)
+    {
+        node(PRINT, s.pos);
+        this.visit(s.exp);
+    }
+
+    @Override
+    public void visit(Stm.While s)
+    {
+        node(WHILE, s.pos);
+        this.visit(s.condition);
+        this.visit(s.body);
+    }
+
+    @Override
+    public void visit(Method.MethodSingle m)
+    {
+        range(m.start, m.end);
+        this.visit(m.retType);
+        writeName(m.id);
+        decs(m.formals);
+        decs(m.locals);
+        stms(m.stms);
+        this.visit(m.retExp);
+    }
+
+    @Override
+    public void visit(Ast.Class.ClassSingle c)
+    {
+        range(c.start, c.end);
+        writeName(c.id);
+        writeName(c.base);
+        decs(c.fields);
+        writeInt(c.methods.size());
+        c.methods.forEach(this::visit);
+    }
+
+    @Override
+    public void visit(MainClass.MainClassSingle c)
+    {
+        range(c.start, c.end);
+        writeName(c.id);
+        this.visit(c.stm);
+    }
+
+    @Override
+    public void visit(Program.ProgramSingle p)
+    {
+        this.visit(p.mainClass);
+        writeInt(p.classes.size());
+        p.classes.forEach(this::visit);
+    }
+}
@@ -0,0 +1,624 @@
+package codegen;
+
+import codegen.ast.Ast;
+import codegen.ast.Label;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Translates the instruction ast straight into .class files, without the
+ * round-trip through jasmin assembly text. Every class is built in memory
+ * (constant pool, fields, methods and their Code attribute) and written out
+ * with a single write.
+ */
+public class ClassFileWriter implements codegen.ast.Visitor
+{
+    // class file version jasmin generates, old enough to need no StackMapTable
+    private static final int MAJOR_VERSION = 45;
+    private static final int MINOR_VERSION = 3;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_SUPER = 0x0020;
+
+    // named in the SourceFile attribute of every class, which stack traces
+    // show, or null for none
+    private final String sourceFile;
+    private ConstantPool pool;
+    private String className;
+    private ByteArrayOutputStream fields;
+    private ByteArrayOutputStream methods;
+    private int fieldsCount;
+    private int methodsCount;
+
+    // code of current method
+    private Code code;
+    private StringBuilder descriptor;
+
+    public ClassFileWriter(String sourceFile)
+    {
+        this.sourceFile = sourceFile;
+    }
+
+    private static class ConstantPool
+    {
+        private static final int CONSTANT_Utf8 = 1;
+        private static final int CONSTANT_Integer = 3;
+        private static final int CONSTANT_Class = 7;
+        private static final int CONSTANT_Fieldref = 9;
+        private static final int CONSTANT_Methodref = 10;
+        private static final int CONSTANT_NameAndType = 12;
+
+        private HashMap<String, Integer> entries = new HashMap<>();
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private DataOutputStream out = new DataOutputStream(bytes);
+        private int count = 1;
+
+        private int lookup(String key)
+        {
+            Integer index = this.entries.get(key);
+            return index == null ? 0 : index;
+        }
+
+        private int add(String key)
+        {
+            this.entries.put(key, this.count);
+            return this.count++;
+        }
+
+        int utf8(String s) throws IOException
+        {
+            String key = "U" + s;
+            int index = lookup(key);
+            if (index != 0) return index;
+            out.writeByte(CONSTANT_Utf8);
+            out.writeUTF(s);
+            return add(key);
+        }
+
+        int integer(int i) throws IOException
+        {
+            String key = "I" + i;
+            int index = lookup(key);
+            if (index != 0) return index;
+            out.writeByte(CONSTANT_Integer);
+            out.writeInt(i);
+            return add(key);
+        }
+
+        int classRef(String name) throws IOException
+        {
+            String key = "C" + name;
+            int index = lookup(key);
+            if (index != 0) return index;
+            int nameIndex = utf8(name);
+            out.writeByte(CONSTANT_Class);
+            out.writeShort(nameIndex);
+            return add(key);
+        }
+
+        private int nameAndType(String name, String desc) throws IOException
+        {
+            String key = "N" + name + ":" + desc;
+            int index = lookup(key);
+            if (index != 0) return index;
+            int nameIndex = utf8(name);
+            int descIndex = utf8(desc);
+            out.writeByte(CONSTANT_NameAndType);
+            out.writeShort(nameIndex);
+            out.writeShort(descIndex);
+            return add(key);
+        }
+
+        private int memberRef(int tag, String c, String name, String desc)
+                throws IOException
+        {
+            String key = tag + c + "." + name + ":" + desc;
+            int index = lookup(key);
+            if (index != 0) return index;
+            int classIndex = classRef(c);
+            int ntIndex = nameAndType(name, desc);
+            out.writeByte(tag);
+            out.writeShort(classIndex);
+            out.writeShort(ntIndex);
+            return add(key);
+        }
+
+        int fieldRef(String c, String name, String desc) throws IOException
+        {
+            return memberRef(CONSTANT_Fieldref, c, name, desc);
+        }
+
+        int methodRef(String c, String name, String desc) throws IOException
+        {
+            return memberRef(CONSTANT_Methodref, c, name, desc);
+        }
+
+        void writeTo(DataOutputStream dst) throws IOException
+        {
+            dst.writeShort(this.count);
+            this.bytes.writeTo(dst);
+        }
+    }
+
+    // byte code of a method, with labels resolved by back patching
+    private static class Code
+    {
+        private byte[] buf = new byte[256];
+        private int len;
+        private HashMap<Label, Integer> labels = new HashMap<>();
+        private ArrayList<Label> jumpLabels = new ArrayList<>();
+        private ArrayList<Integer> jumpSites = new ArrayList<>();
+
+        // operand stack simulation for max_stack
+        private HashMap<Label, Integer> labelDepths = new HashMap<>();
+        private int depth;
+        private int maxDepth;
+        private boolean reachable = true;
+
+        void u1(int b)
+        {
+            if (this.len == this.buf.length)
+                this.buf = java.util.Arrays.copyOf(this.buf, this.len * 2);
+            this.buf[this.len++] = (byte) b;
+        }
+
+        void u2(int s)
+        {
+            u1(s >> 8);
+            u1(s);
+        }
+
+        void stack(int delta)
+        {
+            this.depth += delta;
+            if (this.depth > this.maxDepth)
+                this.maxDepth = this.depth;
+        }
+
+        void local(int shortOp, int op, int index)
+        {
+            if (index <= 3)
+                u1(shortOp + index);
+            else if (index <= 255)
+            {
+                u1(op);
+                u1(index);
+            } else
+            {
+                u1(0xc4); // wide
+                u1(op);
+                u2(index);
+            }
+        }
+
+        void jump(int op, Label l)
+        {
+            this.labelDepths.putIfAbsent(l, this.depth);
+            this.jumpSites.add(this.len);
+            this.jumpLabels.add(l);
+            u1(op);
+            u2(0);
+        }
+
+        void mark(Label l)
+        {
+            this.labels.put(l, this.len);
+            Integer d = this.labelDepths.get(l);
+            if (!this.reachable && d != null)
+                this.depth = d;
+            else this.labelDepths.putIfAbsent(l, this.depth);
+            this.reachable = true;
+        }
+
+        void resolve()
+        {
+            for (int i = 0; i < this.jumpSites.size(); i++)
+            {
+                int site = this.jumpSites.get(i);
+                int offset = this.labels.get(this.jumpLabels.get(i)) - site;
+                if (offset != (short) offset)
+                {
+                    System.out.println("Branch offset out of range in method body.");
+                    System.exit(1);
+                }
+                this.buf[site + 1] = (byte) (offset >> 8);
+                this.buf[site + 2] = (byte) offset;
+            }
+        }
+    }
+
+    private void error(IOException e)
+    {
+        e.printStackTrace();
+        System.exit(1);
+    }
+
+    private static String typeDescriptor(Ast.Type.T t)
+    {
+        return t instanceof Ast.Type.ClassType
+                ? "L" + ((Ast.Type.ClassType) t).id + ";"
+                : "I";
+    }
+
+    private void writeMethod(int access, String name, String desc, int maxLocals)
+    {
+        try
+        {
+            this.code.resolve();
+            DataOutputStream out = new DataOutputStream(this.methods);
+            out.writeShort(access);
+            out.writeShort(this.pool.utf8(name));
+            out.writeShort(this.pool.utf8(desc));
+            out.writeShort(1); // attributes_count
+            out.writeShort(this.pool.utf8("Code"));
+            out.writeInt(12 + this.code.len);
+            out.writeShort(this.code.maxDepth);
+            out.writeShort(maxLocals);
+            out.writeInt(this.code.len);
+            out.write(this.code.buf, 0, this.code.len);
+            out.writeShort(0); // exception_table_length
+            out.writeShort(0); // attributes_count
+            this.methodsCount++;
+        } catch (IOException e)
+        {
+            error(e);
+        }
+    }
+
+    private void beginClass(String id)
+    {
+        this.pool = new ConstantPool();
+        this.className = id;
+        this.fields = new ByteArrayOutputStream();
+        this.methods = new ByteArrayOutputStream();
+        this.fieldsCount = 0;
+        this.methodsCount = 0;
+    }
+
+    private void endClass(String base)
+    {
+        try
+        {
+            int thisIndex = this.pool.classRef(this.className);
+            int superIndex = this.pool.classRef(base);
+            int attributeIndex = 0, sourceIndex = 0;
+            if (this.sourceFile != null)
+            {
+                attributeIndex = this.pool.utf8("SourceFile");
+                sourceIndex = this.pool.utf8(this.sourceFile);
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                    this.methods.size() + this.fields.size() + 1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(MINOR_VERSION);
+            out.writeShort(MAJOR_VERSION);
+            this.pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(0); // interfaces_count
+            out.writeShort(this.fieldsCount);
+            this.fields.writeTo(out);
+            out.writeShort(this.methodsCount);
+            this.methods.writeTo(out);
+            if (this.sourceFile == null)
+                out.writeShort(0); // attributes_count
+            else
+            {
+                out.writeShort(1); // attributes_count
+                out.writeShort(attributeIndex);
+                out.writeInt(2);
+                out.writeShort(sourceIndex);
+            }
+
+            try (FileOutputStream file = new FileOutputStream(this.className + ".class"))
+            {
+                bytes.writeTo(file);
+            }
+            System.out.println("Generated: " + this.className + ".class");
+        } catch (IOException e)
+        {
+            error(e);
+        }
+    }
+
+    @Override
+    public void visit(Ast.Type.ClassType t)
+    {
+        this.descriptor.append('L').append(t.id).append(';');
+    }
+
+    @Override
+    public void visit(Ast.Type.Int t)
+    {
+        this.descriptor.append('I');
+    }
+
+    @Override
+    public void visit(Ast.Dec.DecSingle d)
+    {
+        try
+        {
+            DataOutputStream out = new DataOutputStream(this.fields);
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(this.pool.utf8(d.id));
+            out.writeShort(this.pool.utf8(typeDescriptor(d.type)));
+            out.writeShort(0); // attributes_count
+            this.fieldsCount++;
+        } catch (IOException e)
+        {
+            error(e);
+        }
+    }
+
+    @Override
+    public void visit(Ast.Stm.Aload s)
+    {
+        this.code.local(0x2a, 0x19, s.index);
+        this.code.stack(1);
+    }
+
+    @Override
+    public void visit(Ast.Stm.Areturn s)
+    {
+        this.code.u1(0xb0);
+        this.code.stack(-1);
+        this.code.reachable = false;
+    }
+
+    @Override
+    public void visit(Ast.Stm.Astore s)
+    {
+        this.code.local(0x4b, 0x3a, s.index);
+        this.code.stack(-1);
+    }
+
+    @Override
+    public void visit(Ast.Stm.Goto s)
+    {
+        this.code.jump(0xa7, s.l);
+        this.code.reachable = false;
+    }
+
+    @Override
+    public void visit(Ast.Stm.Getfield s)
+    {
+        int slash = s.fieldSpec.lastIndexOf('/');
+        try
+        {
+            this.code.u1(0xb4);
+            this.code.u2(this.pool.fieldRef(s.fieldSpec.substring(0, slash),
+                    s.fieldSpec.substring(slash + 1), s.descriptor));
+        } catch (IOException e)
+        {
+            error(e);
+        }
+    }
+
+    @Override
+    public void visit(Ast.Stm.Iadd s)
+    {
+        this.code.u1(0x60);
+        this.code.stack(-1);
+    }
+
+    @Override
+    public void visit(Ast.Stm.Ificmplt s)
+    {
+        this.code.stack(-2);
+        this.code.jump(0xa1, s.l);
+    }
+
+    @Override
+    public void visit(Ast.Stm.Iload s)
+    {
+        this.code.local(0x1a, 0x15, s.index);
+        this.code.stack(1);
+    }
+
+    @Override
+    public void visit(Ast.Stm.Imul s)
+    {
+        this.code.u1(0x68);
+        this.code.stack(-1);
+    }
+
+    @Override
+    public void visit(Ast.Stm.Invokevirtual s)
+    {
+        this.descriptor = new StringBuilder("(");
+        s.at.forEach(this::visit);
+        this.descriptor.append(')');
+        this.visit(s.rt);
+        try
+        {
+            this.code.u1(0xb6);
+            this.code.u2(this.pool.methodRef(s.c, s.f, this.descriptor.toString()));
+        } catch (IOException e)
+        {
+            error(e);
+        }
+        this.code.stack(-s.at.size());
+    }
+
+    @Override
+    public void visit(Ast.Stm.Ireturn s)
+    {
+        this.code.u1(0xac);
+        this.code.stack(-1);
+        this.code.reachable = false;
+    }
+
+    @Override
+    public void visit(Ast.Stm.Istore s)
+    {
+        this.code.local(0x3b, 0x36, s.index);
+        this.code.stack(-1);
+    }
+
+    @Override
+    public void visit(Ast.Stm.Isub s)
+    {
+        this.code.u1(0x64);
+        this.code.stack(-1);
+    }
+
+    @Override
+    public void visit(Ast.Stm.LabelJ s)
+    {
+        this.code.mark(s.label);
+    }
+
+    @Override
+    public void visit(Ast.Stm.Ldc s)
+    {
+        if (s.i >= -1 && s.i <= 5)
+            this.code.u1(0x03 + s.i); // iconst_<i>
+        else if (s.i == (byte) s.i)
+        {
+            this.code.u1(0x10); // bipush
+            this.code.u1(s.i);
+        } else if (s.i == (short) s.i)
+        {
+            this.code.u1(0x11); // sipush
+            this.code.u2(s.i);
+        } else
+        {
+            try
+            {
+                int index = this.pool.integer(s.i);
+                if (index <= 255)
+                {
+                    this.code.u1(0x12); // ldc
+                    this.code.u1(index);
+                } else
+                {
+                    this.code.u1(0x13); // ldc_w
+                    this.code.u2(index);
+                }
+            } catch (IOException e)
+            {
+                error(e);
+            }
+        }
+        this.code.stack(1);
+    }
+
+    @Override
+    public void visit(Ast.Stm.New s)
+    {
+        try
+        {
+            this.code.u1(0xbb);
+            this.code.u2(this.pool.classRef(s.c));
+            this.code.u1(0x59); // dup
+            this.code.stack(2);
+            this.code.u1(0xb7);
+            this.code.u2(this.pool.methodRef(s.c, "<init>", "()V"));
+            this.code.stack(-1);
+        } catch (IOException e)
+        {
+            error(e);
+        }
+    }
+
+    @Override
+    public void visit(Ast.Stm.Print s)
+    {
+        try
+        {
+            this.code.u1(0xb2);
+            this.code.u2(this.pool.fieldRef("java/lang/System", "out",
+                    "Ljava/io/PrintStream;"));
+            this.code.stack(1);
+            this.code.u1(0x5f); // swap
+            this.code.u1(0xb6);
+            this.code.u2(this.pool.methodRef("java/io/PrintStream",
+                    "println", "(I)V"));
+            this.code.stack(-2);
+        } catch (IOException e)
+        {
+            error(e);
+        }
+    }
+
+    @Override
+    public void visit(Ast.Stm.Putfield s)
+    {
+        int slash = s.fieldSpec.lastIndexOf('/');
+        try
+        {
+            this.code.u1(0xb5);
+            this.code.u2(this.pool.fieldRef(s.fieldSpec.substring(0, slash),
+                    s.fieldSpec.substring(slash + 1), s.descriptor));
+        } catch (IOException e)
+        {
+            error(e);
+        }
+        this.code.stack(-2);
+    }
+
+    @Override
+    public void visit(Ast.Method.MethodSingle m)
+    {
+        this.descriptor = new StringBuilder("(");
+        m.formals.forEach(f -> this.visit(f.type));
+        this.descriptor.append(')');
+        this.visit(m.retType);
+        String desc = this.descriptor.toString();
+
+        this.code = new Code();
+        m.stms.forEach(this::visit);
+        writeMethod(ACC_PUBLIC, m.id, desc, m.index + 1);
+    }
+
+    @Override
+    public void visit(Ast.Class.ClassSingle c)
+    {
+        String base = c.base == null ? "java/lang/Object" : c.base;
+        beginClass(c.id);
+        c.fields.forEach(this::visit);
+
+        this.code = new Code();
+        this.visit(new Ast.Stm.Aload(0));
+        try
+        {
+            this.code.u1(0xb7);
+            this.code.u2(this.pool.methodRef(base, "<init>", "()V"));
+        } catch (IOException e)
+        {
+            error(e);
+        }
+        this.code.u1(0xb1); // return
+        writeMethod(ACC_PUBLIC, "<init>", "()V", 1);
+
+        c.methods.forEach(this::visit);
+        endClass(base);
+    }
+
+    @Override
+    public void visit(Ast.MainClass.MainClassSingle c)
+    {
+        beginClass(c.id);
+        this.code = new Code();
+        c.stms.forEach(this::visit);
+        this.code.u1(0xb1); // return
+        writeMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", 2);
+        endClass("java/lang/Object");
+    }
+
+    @Override
+    public void visit(Ast.Program.ProgramSingle p)
+    {
+        this.visit(p.mainClass);
+        p.classes.forEach(this::visit);
+    }
+}
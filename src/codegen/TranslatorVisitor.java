@@ -3,9 +3,10 @@ package codegen;
 import ast.Ast;
 import codegen.ast.Ast.*;
 import codegen.ast.Label;
+import semantic.Annotations;
 
+import java.util.ArrayList;
 import java.util.Hashtable;
-import java.util.LinkedList;
 
 /**
  * Created by Mengxu on 2017/1/17.
@@ -17,19 +18,21 @@ public class TranslatorVisitor implements ast.Visitor
     private Hashtable<String, Integer> indexTable;
     private Type.T type;
     private Dec.DecSingle dec;
-    private LinkedList<Stm.T> stms;
+    private ArrayList<Stm.T> stms;
     private Method.MethodSingle method;
     private codegen.ast.Ast.Class.ClassSingle classs;
     private MainClass.MainClassSingle mainClass;
+    private final Annotations annotations; // of the program translated
     public Program.ProgramSingle prog;
 
-    public TranslatorVisitor()
+    public TranslatorVisitor(Annotations annotations)
     {
+        this.annotations = annotations;
         this.classId = null;
         this.indexTable = null;
         this.type = null;
         this.dec = null;
-        this.stms = new LinkedList<>();
+        this.stms = new ArrayList<>();
         this.method = null;
         this.classId = null;
         this.mainClass = null;
@@ -99,15 +102,15 @@ public class TranslatorVisitor implements ast.Visitor
     {
         this.visit(e.exp);
         e.args.forEach(this::visit);
-        this.visit(e.rt);
+        this.visit(this.annotations.returnType(e));
         Type.T rt = this.type;
-        LinkedList<Type.T> at = new LinkedList<>();
-        e.at.forEach(a ->
+        ArrayList<Type.T> at = new ArrayList<>();
+        for (int i = 0; i < e.args.size(); i++)
         {
-            this.visit(a);
+            this.visit(this.annotations.argType(e, i));
             at.add(this.type);
-        });
-        emit(new Stm.Invokevirtual(e.id, e.type, at, rt));
+        }
+        emit(new Stm.Invokevirtual(e.id, this.annotations.classOf(e), at, rt));
     }
 
     @Override
@@ -119,10 +122,10 @@ public class TranslatorVisitor implements ast.Visitor
     @Override
     public void visit(Ast.Exp.Id e)
     {
-        if (e.isField)
+        Ast.Type.T type = this.annotations.type(e);
+        if (this.annotations.isField(e))
         {
             emit(new Stm.Aload(0));
-            Ast.Type.T type = e.type;
             emit(new Stm.Getfield(this.classId + '/' + e.id,
                     type instanceof Ast.Type.ClassType ?
                             ("L" + ((ast.Ast.Type.ClassType) type).id + ";")
@@ -130,7 +133,7 @@ public class TranslatorVisitor implements ast.Visitor
         } else
         {
             int index = this.indexTable.get(e.id);
-            if (e.type instanceof Ast.Type.ClassType)
+            if (type instanceof Ast.Type.ClassType)
                 emit(new Stm.Aload(index));
             else emit(new Stm.Iload(index));
         }
@@ -209,11 +212,12 @@ public class TranslatorVisitor implements ast.Visitor
     @Override
     public void visit(Ast.Stm.Assign s)
     {
+        Ast.Type.T type = this.annotations.type(s);
         try
         {
             int index = this.indexTable.get(s.id);
             this.visit(s.exp);
-            if (s.type instanceof Ast.Type.ClassType)
+            if (type instanceof Ast.Type.ClassType)
                 emit(new Stm.Astore(index));
             else emit(new Stm.Istore(index));
         } catch (NullPointerException e)
@@ -221,8 +225,8 @@ public class TranslatorVisitor implements ast.Visitor
             emit(new Stm.Aload(0));
             this.visit(s.exp);
             emit(new Stm.Putfield(this.classId + '/' + s.id,
-                    s.type instanceof Ast.Type.ClassType ?
-                            ("L" + ((ast.Ast.Type.ClassType) s.type).id + ";")
+                    type instanceof Ast.Type.ClassType ?
+                            ("L" + ((ast.Ast.Type.ClassType) type).id + ";")
                             : "I"));
         }
     }
@@ -277,20 +281,20 @@ public class TranslatorVisitor implements ast.Visitor
         this.visit(m.retType);
         Type.T _retType = this.type;
 
-        LinkedList<Dec.DecSingle> _formals = new LinkedList<>();
+        ArrayList<Dec.DecSingle> _formals = new ArrayList<>();
         m.formals.forEach(f ->
         {
             this.visit(f);
             _formals.add(this.dec);
         });
 
-        LinkedList<Dec.DecSingle> _locals = new LinkedList<>();
+        ArrayList<Dec.DecSingle> _locals = new ArrayList<>();
         m.locals.forEach(l ->
         {
             this.visit(l);
             _locals.add(this.dec);
         });
-        this.stms = new LinkedList<>();
+        this.stms = new ArrayList<>();
         m.stms.forEach(this::visit);
 
         this.visit(m.retExp);
@@ -307,13 +311,13 @@ public class TranslatorVisitor implements ast.Visitor
     public void visit(Ast.Class.ClassSingle c)
     {
         this.classId = c.id;
-        LinkedList<Dec.DecSingle> _fields = new LinkedList<>();
+        ArrayList<Dec.DecSingle> _fields = new ArrayList<>();
         c.fields.forEach(f ->
         {
             this.visit(f);
             _fields.add(this.dec);
         });
-        LinkedList<Method.MethodSingle> _methods = new LinkedList<>();
+        ArrayList<Method.MethodSingle> _methods = new ArrayList<>();
         c.methods.forEach(m ->
         {
             this.visit(m);
@@ -328,15 +332,15 @@ public class TranslatorVisitor implements ast.Visitor
     {
         this.visit(c.stm);
         this.mainClass = new MainClass.MainClassSingle(c.id, this.stms);
-        this.stms = new LinkedList<>();
+        this.stms = new ArrayList<>();
     }
 
     @Override
     public void visit(Ast.Program.ProgramSingle p)
     {
         this.visit(p.mainClass);
-        LinkedList<codegen.ast.Ast.Class.ClassSingle> _class =
-                new LinkedList<>();
+        ArrayList<codegen.ast.Ast.Class.ClassSingle> _class =
+                new ArrayList<>();
         p.classes.forEach(c ->
         {
             this.visit(c);
@@ -1,6 +1,6 @@
 package codegen.ast;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 
 /**
  * Created by Mengxu on 2017/1/17.
@@ -9,7 +9,11 @@ public class Ast
 {
     public static class Type
     {
-        public static abstract class T {}
+        public static abstract class T
+        {
+            // calls the visit of v for the class of this type
+            public abstract void accept(Visitor v);
+        }
 
         public static class ClassType extends T
         {
@@ -25,6 +29,12 @@ public class Ast
             {
                 return this.id;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
         public static class Int extends T
@@ -34,6 +44,12 @@ public class Ast
             {
                 return "@int";
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
     }
 
@@ -54,7 +70,11 @@ public class Ast
 
     public static class Stm
     {
-        public static abstract class T {}
+        public static abstract class T
+        {
+            // calls the visit of v for the class of this instruction
+            public abstract void accept(Visitor v);
+        }
 
         public static class Aload extends T
         {
@@ -64,9 +84,22 @@ public class Ast
             {
                 this.index = index;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
-        public static class Areturn extends T {}
+        public static class Areturn extends T
+        {
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
+        }
 
         public static class Astore extends T
         {
@@ -76,6 +109,12 @@ public class Ast
             {
                 this.index = index;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
         public static class Goto extends T
@@ -86,6 +125,12 @@ public class Ast
             {
                 this.l = l;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
         public static class Getfield extends T
@@ -97,9 +142,22 @@ public class Ast
                 this.fieldSpec = fieldSpec;
                 this.descriptor = descriptor;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
-        public static class Iadd extends T {}
+        public static class Iadd extends T
+        {
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
+        }
 
         public static class Ificmplt extends T
         {
@@ -109,6 +167,12 @@ public class Ast
             {
                 this.l = l;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
         public static class Iload extends T
@@ -119,27 +183,53 @@ public class Ast
             {
                 this.index = index;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
-        public static class Imul extends T {}
+        public static class Imul extends T
+        {
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
+        }
 
         public static class Invokevirtual extends T
         {
             public String f;
             public String c;
-            public LinkedList<Type.T> at;
+            public ArrayList<Type.T> at;
             public Type.T rt;
 
-            public Invokevirtual(String f, String c, LinkedList<Type.T> at, Type.T rt)
+            public Invokevirtual(String f, String c, ArrayList<Type.T> at, Type.T rt)
             {
                 this.f = f;
                 this.c = c;
                 this.at = at;
                 this.rt = rt;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
-        public static class Ireturn extends T {}
+        public static class Ireturn extends T
+        {
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
+        }
 
         public static class Istore extends T
         {
@@ -149,9 +239,22 @@ public class Ast
             {
                 this.index = index;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
-        public static class Isub extends T {}
+        public static class Isub extends T
+        {
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
+        }
 
         public static class LabelJ extends T
         {
@@ -161,6 +264,12 @@ public class Ast
             {
                 this.label = label;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
         public static class Ldc extends T
@@ -171,6 +280,12 @@ public class Ast
             {
                 this.i = i;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
         public static class New extends T
@@ -181,9 +296,22 @@ public class Ast
             {
                 this.c = c;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
 
-        public static class Print extends T {}
+        public static class Print extends T
+        {
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
+        }
 
         public static class Putfield extends T
         {
@@ -194,6 +322,12 @@ public class Ast
                 this.fieldSpec = fieldSpec;
                 this.descriptor = descriptor;
             }
+
+            @Override
+            public void accept(Visitor v)
+            {
+                v.visit(this);
+            }
         }
     }
 
@@ -204,16 +338,16 @@ public class Ast
             public Type.T retType;
             public String id;
             public String classId;
-            public LinkedList<Dec.DecSingle> formals;
-            public LinkedList<Dec.DecSingle> locals;
-            public LinkedList<Stm.T> stms;
+            public ArrayList<Dec.DecSingle> formals;
+            public ArrayList<Dec.DecSingle> locals;
+            public ArrayList<Stm.T> stms;
             public int index; // number of index
             public int retExp;
 
             public MethodSingle(Type.T retType, String id, String classId,
-                                LinkedList<Dec.DecSingle> formals,
-                                LinkedList<Dec.DecSingle> locals,
-                                LinkedList<Stm.T> stms, int retExp, int index)
+                                ArrayList<Dec.DecSingle> formals,
+                                ArrayList<Dec.DecSingle> locals,
+                                ArrayList<Stm.T> stms, int retExp, int index)
             {
                 this.retType = retType;
                 this.id = id;
@@ -233,12 +367,12 @@ public class Ast
         {
             public String id;
             public String base;
-            public LinkedList<Dec.DecSingle> fields;
-            public LinkedList<Method.MethodSingle> methods;
+            public ArrayList<Dec.DecSingle> fields;
+            public ArrayList<Method.MethodSingle> methods;
 
             public ClassSingle(String id, String base,
-                               LinkedList<Dec.DecSingle> fields,
-                               LinkedList<Method.MethodSingle> methods)
+                               ArrayList<Dec.DecSingle> fields,
+                               ArrayList<Method.MethodSingle> methods)
             {
                 this.id = id;
                 this.base = base;
@@ -253,10 +387,10 @@ public class Ast
         public static class MainClassSingle
         {
             public String id;
-            public LinkedList<Stm.T> stms;
+            public ArrayList<Stm.T> stms;
 
             public MainClassSingle(String id,
-                                   LinkedList<Stm.T> stms)
+                                   ArrayList<Stm.T> stms)
             {
                 this.id = id;
                 this.stms = stms;
@@ -269,10 +403,10 @@ public class Ast
         public static class ProgramSingle
         {
             public MainClass.MainClassSingle mainClass;
-            public LinkedList<Class.ClassSingle> classes;
+            public ArrayList<Class.ClassSingle> classes;
 
             public ProgramSingle(MainClass.MainClassSingle mainClass,
-                                 LinkedList<Class.ClassSingle> classes)
+                                 ArrayList<Class.ClassSingle> classes)
             {
                 this.mainClass = mainClass;
                 this.classes = classes;
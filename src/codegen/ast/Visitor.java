@@ -8,9 +8,7 @@ public interface Visitor
     // Type
     default void visit(Ast.Type.T t)
     {
-        if (t instanceof Ast.Type.ClassType)
-            this.visit(((Ast.Type.ClassType) t));
-        else this.visit(((Ast.Type.Int) t));
+        t.accept(this);
     }
 
     void visit(Ast.Type.ClassType t);
@@ -23,42 +21,7 @@ public interface Visitor
     // Stm
     default void visit(Ast.Stm.T s)
     {
-        if (s instanceof Ast.Stm.Aload)
-            this.visit(((Ast.Stm.Aload) s));
-        else if (s instanceof Ast.Stm.Areturn)
-            this.visit(((Ast.Stm.Areturn) s));
-        else if (s instanceof Ast.Stm.Astore)
-            this.visit(((Ast.Stm.Astore) s));
-        else if (s instanceof Ast.Stm.Goto)
-            this.visit(((Ast.Stm.Goto) s));
-        else if (s instanceof Ast.Stm.Getfield)
-            this.visit(((Ast.Stm.Getfield) s));
-        else if (s instanceof Ast.Stm.Iadd)
-            this.visit(((Ast.Stm.Iadd) s));
-        else if (s instanceof Ast.Stm.Ificmplt)
-            this.visit(((Ast.Stm.Ificmplt) s));
-        else if (s instanceof Ast.Stm.Iload)
-            this.visit(((Ast.Stm.Iload) s));
-        else if (s instanceof Ast.Stm.Imul)
-            this.visit(((Ast.Stm.Imul) s));
-        else if (s instanceof Ast.Stm.Invokevirtual)
-            this.visit(((Ast.Stm.Invokevirtual) s));
-        else if (s instanceof Ast.Stm.Ireturn)
-            this.visit(((Ast.Stm.Ireturn) s));
-        else if (s instanceof Ast.Stm.Istore)
-            this.visit(((Ast.Stm.Istore) s));
-        else if (s instanceof Ast.Stm.Isub)
-            this.visit(((Ast.Stm.Isub) s));
-        else if (s instanceof Ast.Stm.LabelJ)
-            this.visit(((Ast.Stm.LabelJ) s));
-        else if (s instanceof Ast.Stm.Ldc)
-            this.visit(((Ast.Stm.Ldc) s));
-        else if (s instanceof Ast.Stm.New)
-            this.visit(((Ast.Stm.New) s));
-        else if (s instanceof Ast.Stm.Print)
-            this.visit(((Ast.Stm.Print) s));
-        else // if (s instanceof Ast.Stm.Putfield)
-            this.visit(((Ast.Stm.Putfield) s));
+        s.accept(this);
     }
 
     void visit(Ast.Stm.Aload s);
@@ -0,0 +1,70 @@
+package lexer;
+
+import lexer.Token.Kind;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Keyword recognition on the raw source bytes. Keywords are bucketed by
+ * length and first letter, which leaves at most two candidates per bucket
+ * ("this" and "true"), so a word is matched with a table lookup and a byte
+ * compare, before any String exists.
+ */
+public class Keywords
+{
+    private static final int MAX_LENGTH = 7; // "boolean"
+    private static final Kind[] KEYWORDS = {
+            Kind.Boolean, Kind.Class, Kind.Else, Kind.False, Kind.If,
+            Kind.Int, Kind.Main, Kind.New, Kind.Print, Kind.Return,
+            Kind.This, Kind.True, Kind.Void, Kind.While
+    };
+
+    private static final Kind[][] buckets = new Kind[(MAX_LENGTH + 1) * 26][];
+    private static final byte[][] spellings = new byte[Kind.values().length][];
+
+    static
+    {
+        for (Kind k : KEYWORDS)
+        {
+            byte[] word = k.toString().toLowerCase().getBytes(StandardCharsets.ISO_8859_1);
+            spellings[k.ordinal()] = word;
+            int b = bucket(word.length, word[0]);
+            Kind[] old = buckets[b];
+            Kind[] bucket = new Kind[old == null ? 1 : old.length + 1];
+            if (old != null)
+                System.arraycopy(old, 0, bucket, 0, old.length);
+            bucket[bucket.length - 1] = k;
+            buckets[b] = bucket;
+        }
+    }
+
+    private static int bucket(int length, int first)
+    {
+        return length * 26 + first - 'a';
+    }
+
+    // the keyword spelled by buf[start, start + length), or null
+    public static Kind lookup(ByteBuffer buf, int start, int length)
+    {
+        if (length > MAX_LENGTH)
+            return null;
+        int first = buf.get(start);
+        if (first < 'a' || first > 'z')
+            return null;
+        Kind[] bucket = buckets[bucket(length, first)];
+        if (bucket == null)
+            return null;
+
+        candidates:
+        for (Kind k : bucket)
+        {
+            byte[] word = spellings[k.ordinal()];
+            for (int i = 1; i < length; i++)
+                if (buf.get(start + i) != word[i])
+                    continue candidates;
+            return k;
+        }
+        return null;
+    }
+}
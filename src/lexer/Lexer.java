@@ -4,166 +4,337 @@ import lexer.Token.Kind;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Created by Mengxu on 2017/1/6.
  */
 public class Lexer
 {
-    private InputStream fstream; // input stream of the file
-    private int lineNum;
+    // files larger than this are memory mapped instead of read into the heap
+    private static final long MAP_THRESHOLD = 1 << 20;
+    // size of the window a streamed source is read through
+    private static final int WINDOW_SIZE = 1 << 16;
+
+    private ByteBuffer buf; // the whole source, or a window of a stream
+    private ReadableByteChannel channel; // null unless streaming
+    private int origin; // where this lexer started in buf
+    private int pos; // index of the next character
+    private int mark; // bytes from here on must survive a refill
+    private int limit;
+    private int base; // offset in the source of buf[0], when streaming
+    private LineMap lines; // where the lines lexed so far start
+    private int tokenStart; // where the last token scanned starts in buf
+    private int tokenLength; // length of the last ID or NUM scanned
+
+    public Lexer(ByteBuffer buf)
+    {
+        this(buf, buf.position(), buf.limit());
+    }
+
+    // lex only buf[start, end), whose first line is counted as line 1
+    public Lexer(ByteBuffer buf, int start, int end)
+    {
+        this.buf = buf;
+        this.origin = start;
+        this.pos = start;
+        this.limit = end;
+        this.lines = new LineMap(start);
+    }
+
+    // stream the source through a fixed window, so memory stays bounded
+    // however long the input is. Lexemes are only valid until the next
+    // token is scanned, see isStreaming()
+    public Lexer(ReadableByteChannel channel)
+    {
+        this(ByteBuffer.allocate(WINDOW_SIZE), 0, 0);
+        this.channel = channel;
+    }
 
     public Lexer(InputStream fstream)
     {
-        this.fstream = fstream;
-        this.lineNum = 1;
+        this(Channels.newChannel(fstream));
+    }
+
+    public Lexer(Path path) throws IOException
+    {
+        this(readAll(path));
+    }
+
+    // read a whole file through its channel, mapping it when it is large
+    public static ByteBuffer readAll(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Source file is too large: " + path);
+            if (size >= MAP_THRESHOLD)
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining() && channel.read(buf) != -1) ;
+            buf.flip();
+            return buf;
+        }
     }
 
     public Token nextToken()
     {
-        Token token = null;
-        try
+        Kind kind = scan();
+        if (kind != Kind.ID && kind != Kind.NUM)
+            return Token.of(kind);
+        if (isStreaming()) // the window moves on, so keep a copy
+        {
+            byte[] lexeme = new byte[this.tokenLength];
+            ByteBuffer b = this.buf.duplicate();
+            b.position(this.tokenStart);
+            b.get(lexeme);
+            return new Token(kind, ByteBuffer.wrap(lexeme), 0, lexeme.length);
+        }
+        return new Token(kind, this.buf, this.tokenStart, this.tokenLength);
+    }
+
+    // scan the next token without allocating it, its lexeme is
+    // left in tokenStart() and tokenLength()
+    public Kind scan()
+    {
+        return nextTokenInternal();
+    }
+
+    // offset in the source of the token scanned last
+    public int tokenPos()
+    {
+        return this.base + this.tokenStart;
+    }
+
+    // the lines lexed so far, by their offsets in the source
+    public LineMap lines()
+    {
+        return this.lines;
+    }
+
+    public int tokenStart()
+    {
+        return this.tokenStart;
+    }
+
+    public int tokenLength()
+    {
+        return this.tokenLength;
+    }
+
+    public ByteBuffer source()
+    {
+        return this.buf;
+    }
+
+    // whether source() is a window that is overwritten as the stream is read
+    public boolean isStreaming()
+    {
+        return this.channel != null;
+    }
+
+    // number of bytes not lexed yet
+    public int remaining()
+    {
+        return this.limit - this.pos;
+    }
+
+    // read more of the stream into the window, moving the bytes from mark
+    // on to its front. False at the end of the input
+    private boolean fill()
+    {
+        if (this.channel == null)
+            return false;
+
+        int keep = this.mark;
+        this.buf.limit(this.limit).position(keep);
+        this.buf.compact();
+        if (!this.buf.hasRemaining()) // a single token fills the window
         {
-            token = nextTokenInternal();
+            ByteBuffer bigger = ByteBuffer.allocate(this.buf.capacity() * 2);
+            this.buf.flip();
+            this.buf = bigger.put(this.buf);
         }
-        catch (IOException e)
+        this.pos -= keep;
+        this.mark -= keep;
+        this.limit -= keep;
+        this.tokenStart -= keep;
+        this.base += keep;
+
+        int n = 0;
+        try
+        {
+            while (n == 0)
+                n = this.channel.read(this.buf);
+        } catch (IOException e)
         {
             System.out.println("A IO exception!");
             e.printStackTrace();
+            n = -1;
         }
-
-        return token;
+        if (n > 0)
+            this.limit += n;
+        return n > 0;
     }
 
-    private Token nextTokenInternal() throws IOException
+    private boolean more()
     {
-        int c = this.fstream.read();
+        return this.pos < this.limit || fill();
+    }
 
-        if (-1 == c)
-            return new Token(Kind.EOF, lineNum);
+    private int read()
+    {
+        return more() ? this.buf.get(this.pos++) & 0xff : -1;
+    }
 
-        // skip all kinds of blanks
-        while (' ' == c || '\t' == c || '\r' == c || '\n' == c)
+    // move to the next '\n' or the end. Eight bytes are tested at a time
+    // for a newline, which is how comments are skipped
+    private void skipToEndOfLine()
+    {
+        do
         {
-            if ('\n' == c ) lineNum++;
-            c = this.fstream.read();
-        }
+            this.mark = this.pos;
+            while (this.pos + 8 <= this.limit)
+            {
+                long x = this.buf.getLong(this.pos) ^ 0x0A0A0A0A0A0A0A0AL;
+                if (((x - 0x0101010101010101L) & ~x & 0x8080808080808080L) != 0)
+                    break; // some byte of x is zero, i.e. a '\n'
+                this.pos += 8;
+            }
+            while (this.pos < this.limit && this.buf.get(this.pos) != '\n')
+                this.pos++;
+        } while (this.pos == this.limit && fill());
+    }
+
+    // line and column in the whole source of the character read last. The
+    // line map only starts where this lexer did, so a lexer of a later chunk
+    // counts the lines before it from the beginning
+    private String errorPosition()
+    {
+        int at = this.base + this.pos - 1;
+        if (this.origin == 0)
+            return this.lines.position(at);
+        LineMap whole = new LineMap(0);
+        for (int i = 0; i < at; i++)
+            if (this.buf.get(i) == '\n')
+                whole.add(i + 1);
+        return whole.position(at);
+    }
 
-        // deal with comments
-        if ('/' == c )
+    // skip all blanks and comments, in one loop however many there are
+    private int skipBlanks()
+    {
+        while (true)
         {
-            c = fstream.read();
-            if ('/' == c )
+            this.mark = this.pos;
+            // runs of indentation are skipped eight spaces at a time
+            while (this.pos + 8 <= this.limit
+                    && this.buf.getLong(this.pos) == 0x2020202020202020L)
+                this.pos += 8;
+
+            int c = read();
+            if (' ' == c || '\t' == c || '\r' == c)
+                continue;
+            if ('\n' == c)
             {
-                while ('\n' != c) c = this.fstream.read();
-                lineNum++;
-                return nextTokenInternal(); // tail recursion
+                this.lines.add(this.base + this.pos);
+                continue;
             }
-            else
+            if ('/' != c)
+                return c;
+
+            // deal with comments
+            if ('/' != read())
             {
                 System.out.println("Comment should begin with \"//\"");
-                System.out.println("Error is found at line " + lineNum);
+                System.out.println("Error is found at line " + errorPosition());
                 System.exit(1);
             }
+            skipToEndOfLine();
         }
+    }
+
+    private Kind nextTokenInternal()
+    {
+        int c = skipBlanks();
+
+        if (-1 == c)
+        {
+            this.tokenStart = this.pos;
+            return Kind.EOF;
+        }
+        this.tokenStart = this.pos - 1;
 
         switch (c)
         {
             case '+':
-                return new Token(Kind.Add, lineNum);
+                return Kind.Add;
             case '&':
-                c = this.fstream.read();
+                c = read();
                 if ('&' == c)
-                    return new Token(Kind.And, lineNum);
+                    return Kind.And;
                 else
                 {
-                    System.out.println("Expect two &, but only got one at line " + lineNum);
+                    System.out.println("Expect two &, but only got one at line " + errorPosition());
                     System.exit(1);
                 }
             case '=':
-                return new Token(Kind.Assign, lineNum);
+                return Kind.Assign;
             case ':':
-                return new Token(Kind.Colon, lineNum);
+                return Kind.Colon;
             case ',':
-                return new Token(Kind.Commer, lineNum);
+                return Kind.Commer;
             case '.':
-                return new Token(Kind.Dot, lineNum);
+                return Kind.Dot;
             case '{':
-                return new Token(Kind.Lbrace, lineNum);
+                return Kind.Lbrace;
             case '(':
-                return new Token(Kind.Lparen, lineNum);
+                return Kind.Lparen;
             case '<':
-                return new Token(Kind.LT, lineNum);
+                return Kind.LT;
             case '!':
-                return new Token(Kind.Not, lineNum);
+                return Kind.Not;
             case '}':
-                return new Token(Kind.Rbrace, lineNum);
+                return Kind.Rbrace;
             case ')':
-                return new Token(Kind.Rparen, lineNum);
+                return Kind.Rparen;
             case ';':
-                return new Token(Kind.Semi, lineNum);
+                return Kind.Semi;
             case '-':
-                return new Token(Kind.Sub, lineNum);
+                return Kind.Sub;
             case '*':
-                return new Token(Kind.Times, lineNum);
+                return Kind.Times;
             default:
-                StringBuilder sb = new StringBuilder();
-                sb.append((char)c);
-                while (true)
+                this.mark = this.pos - 1;
+                while (more())
                 {
-                    this.fstream.mark(1);
-                    c = this.fstream.read();
-                    if (-1 != c && ' ' != c && '\t' != c
-                            && '\n' != c && '\r' != c
-                            && !isSpecialCharacter(c))
-                        sb.append((char)c);
-                    else
-                    {
-                        this.fstream.reset();
+                    c = this.buf.get(this.pos) & 0xff;
+                    if (' ' == c || '\t' == c || '\n' == c || '\r' == c
+                            || isSpecialCharacter(c))
                         break;
-                    }
+                    this.pos++;
                 }
-                switch (sb.toString())
+                int start = this.mark;
+                Kind keyword = Keywords.lookup(this.buf, start, this.pos - start);
+                if (keyword != null)
+                    return keyword;
+                this.tokenLength = this.pos - start;
+                if (isNumber(start, this.pos))
+                    return Kind.NUM;
+                else if (isIdentifier(start))
+                    return Kind.ID;
+                else
                 {
-                    case "boolean":
-                        return new Token(Kind.Boolean, lineNum);
-                    case "class":
-                        return new Token(Kind.Class, lineNum);
-                    case "else":
-                        return new Token(Kind.Else, lineNum);
-                    case "false":
-                        return new Token(Kind.False, lineNum);
-                    case "if":
-                        return new Token(Kind.If, lineNum);
-                    case "int":
-                        return new Token(Kind.Int, lineNum);
-                    case "main":
-                        return new Token(Kind.Main, lineNum);
-                    case "new":
-                        return new Token(Kind.New, lineNum);
-                    case "print":
-                        return new Token(Kind.Print, lineNum);
-                    case "return":
-                        return new Token(Kind.Return, lineNum);
-                    case "this":
-                        return new Token(Kind.This, lineNum);
-                    case "true":
-                        return new Token(Kind.True, lineNum);
-                    case "void":
-                        return new Token(Kind.Void, lineNum);
-                    case "while":
-                        return new Token(Kind.While, lineNum);
-                    default:
-                        if (isNumber(sb.toString()))
-                            return new Token(Kind.NUM, lineNum, sb.toString());
-                        else if (isIdentifier(sb.toString()))
-                            return new Token(Kind.ID, lineNum, sb.toString());
-                        else
-                        {
-                            System.out.println("This is an illegal identifier at line " + lineNum);
-                            System.exit(1);
-                            return null;
-                        }
+                    System.out.println("This is an illegal identifier at line " + errorPosition());
+                    System.exit(1);
+                    return null;
                 }
         }
     }
@@ -176,21 +347,23 @@ public class Lexer
                 || '-' == c || '*' == c;
     }
 
-    private static boolean isNumber(String str)
+    private boolean isNumber(int start, int end)
     {
-        for (int i = 0; i < str.length(); i++)
+        for (int i = start; i < end; i++)
         {
-            if (str.charAt(i) < '0' || str.charAt(i) > '9')
+            int c = this.buf.get(i);
+            if (c < '0' || c > '9')
                 return false;
         }
         return true;
     }
 
-    private static boolean isIdentifier(String str)
+    private boolean isIdentifier(int start)
     {
-        return str.charAt(0) >= 'a' || str.charAt(0) <= 'z'
-                || str.charAt(0) >= 'A' || str.charAt(0) <= 'Z'
-                || str.charAt(0) == '_';
+        int c = this.buf.get(start) & 0xff;
+        return c >= 'a' || c <= 'z'
+                || c >= 'A' || c <= 'Z'
+                || c == '_';
     }
 
 }
@@ -0,0 +1,99 @@
+package lexer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Offsets at which the lines of a source file start. Tokens and ast nodes
+ * only keep a source offset; the line and column of an offset are worked
+ * out here by binary search, when a diagnostic needs them.
+ */
+public class LineMap
+{
+    private int[] starts;
+    private int size;
+
+    // a map whose first line starts at offset origin
+    public LineMap(int origin)
+    {
+        this.starts = new int[64];
+        this.starts[0] = origin;
+        this.size = 1;
+    }
+
+    // a line starts at offset pos, after all lines added before
+    public void add(int pos)
+    {
+        if (this.size == this.starts.length)
+            this.starts = Arrays.copyOf(this.starts, this.size * 2);
+        this.starts[this.size++] = pos;
+    }
+
+    // append the lines of the map that follows this one in the source;
+    // its first line is where the last newline of this map left off
+    void append(LineMap next)
+    {
+        int n = next.size - 1;
+        if (this.size + n > this.starts.length)
+            this.starts = Arrays.copyOf(this.starts, this.size + n);
+        System.arraycopy(next.starts, 1, this.starts, this.size, n);
+        this.size += n;
+    }
+
+    // the map of the source after bytes [start, oldEnd) of it were replaced
+    // by source[start, newEnd). The lines that start in the edit are found
+    // again, those after it move by the difference in length
+    public LineMap edit(ByteBuffer source, int start, int oldEnd, int newEnd)
+    {
+        LineMap edited = new LineMap(this.starts[0]);
+        int i = 1;
+        while (i < this.size && this.starts[i] <= start)
+            edited.add(this.starts[i++]);
+        for (int k = start; k < newEnd; k++)
+            if (source.get(k) == '\n')
+                edited.add(k + 1);
+        for (; i < this.size; i++)
+            if (this.starts[i] > oldEnd)
+                edited.add(this.starts[i] + newEnd - oldEnd);
+        return edited;
+    }
+
+    // the number of lines
+    public int size()
+    {
+        return this.size;
+    }
+
+    // the offset at which line, counted from 1, starts
+    public int start(int line)
+    {
+        return this.starts[line - 1];
+    }
+
+    // the line, counted from 1, of offset pos
+    public int line(int pos)
+    {
+        int lo = 0, hi = this.size - 1;
+        while (lo < hi)
+        {
+            int mid = (lo + hi + 1) >>> 1;
+            if (this.starts[mid] <= pos)
+                lo = mid;
+            else hi = mid - 1;
+        }
+        return lo + 1;
+    }
+
+    // the column, counted from 1, of offset pos
+    public int column(int pos)
+    {
+        return pos - this.starts[line(pos) - 1] + 1;
+    }
+
+    // "line:column" of offset pos, for diagnostics
+    public String position(int pos)
+    {
+        int line = line(pos);
+        return line + ":" + (pos - this.starts[line - 1] + 1);
+    }
+}
@@ -1,5 +1,8 @@
 package lexer;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Created by Mengxu on 2017/1/6.
  */
@@ -41,28 +44,81 @@ public class Token
         While // while
     }
 
-    public Kind kind; // the kind of the token
-    public String lexeme; // extra lexeme of the token
-    public int lineNum; // the line number of the token
+    // tokens whose kind says it all are shared, one instance per kind
+    private static final Token[] fixed = new Token[Kind.values().length];
 
-    public Token(Kind kind, int lineNum)
+    static
     {
-        this.kind = kind;
-        this.lineNum = lineNum;
+        for (Kind kind : Kind.values())
+            if (kind != Kind.ID && kind != Kind.NUM)
+                fixed[kind.ordinal()] = new Token(kind);
+    }
+
+    public final Kind kind; // the kind of the token
+    public final int offset; // where the lexeme starts in the source
+    public final int length; // length of the lexeme, 0 if the kind says it all
+    private final ByteBuffer source;
+    private String lexeme; // created on first use
+
+    private Token(Kind kind)
+    {
+        this(kind, null, 0, 0);
     }
 
-    public Token(Kind kind, int lineNum, String lexeme)
+    public Token(Kind kind, ByteBuffer source, int offset, int length)
     {
         this.kind = kind;
-        this.lineNum = lineNum;
-        this.lexeme = lexeme;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    // the shared token of a keyword, punctuation or EOF
+    public static Token of(Kind kind)
+    {
+        return fixed[kind.ordinal()];
+    }
+
+    // extra lexeme of the token, null for tokens without one
+    public String lexeme()
+    {
+        if (this.lexeme == null && this.source != null)
+            this.lexeme = text(this.source, this.offset, this.length);
+        return this.lexeme;
+    }
+
+    // value of an integer literal, read straight from the source
+    public int intValue()
+    {
+        return intValue(this.source, this.offset, this.length);
+    }
+
+    static String text(ByteBuffer source, int offset, int length)
+    {
+        byte[] bytes = new byte[length];
+        ByteBuffer b = source.duplicate();
+        b.position(offset);
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1).intern();
+    }
+
+    static int intValue(ByteBuffer source, int offset, int length)
+    {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++)
+        {
+            value = value * 10 + (source.get(i) - '0');
+            if (value > Integer.MAX_VALUE)
+                throw new NumberFormatException("For input string: \""
+                        + text(source, offset, length) + "\"");
+        }
+        return (int) value;
     }
 
     @Override
     public String toString()
     {
         return "Token_" + this.kind.toString()
-                + (lexeme == null ? "" : " : " + this.lexeme)
-                + " : at line " + this.lineNum;
+                + (this.source == null ? "" : " : " + this.lexeme());
     }
 }
@@ -0,0 +1,249 @@
+package lexer;
+
+import lexer.Token.Kind;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * All tokens of a source file, lexed up front into parallel arrays of
+ * kind, source offset and lexeme length, plus one LineMap for the lines
+ * of all of them. Tokens are addressed by index, so a parser can look
+ * ahead or back up just by moving an int. The last token is always EOF,
+ * and kind() is EOF past it too.
+ * A streamed source is not lexed up front but as its tokens are asked
+ * for, into a ring of the last RING of them, so memory for the tokens
+ * stays bounded like that for the input. Asking for a token that has
+ * left the ring is an IllegalStateException.
+ */
+public class TokenBuffer
+{
+    private static final Kind[] kindValues = Kind.values();
+
+    // sources are lexed in parallel in chunks of at least this many bytes
+    private static final int MIN_CHUNK = 1 << 20;
+    // tokens of a streamed source kept, far more than a parser looks
+    // ahead or back. A power of two
+    private static final int RING = 64;
+
+    private ByteBuffer source; // where the lexemes are
+    private Lexer lexer; // of a streamed source, until its EOF
+    private String[] texts; // the lexemes in the ring of a streamed source
+    private byte[] kinds;
+    private int[] starts;
+    private int[] lengths;
+    private int size;
+    private LineMap lines;
+
+    public TokenBuffer(Lexer lexer)
+    {
+        // a token for every 8 bytes or so is a fair first guess
+        this(lexer.source(), lexer.isStreaming()
+                ? RING : Math.max(16, lexer.remaining() / 8));
+        this.lines = lexer.lines();
+
+        if (lexer.isStreaming())
+        {
+            this.lexer = lexer;
+            this.texts = new String[RING];
+            return;
+        }
+        Kind kind;
+        do
+        {
+            kind = lexer.scan();
+            add(kind, lexer.tokenPos(), lexer.tokenLength());
+        } while (kind != Kind.EOF);
+    }
+
+    // lex the next token of a streamed source into the ring. Its lexeme is
+    // only in the window until the token after it is scanned, so it is
+    // kept as a string
+    private void lexNext()
+    {
+        Kind kind = this.lexer.scan();
+        int slot = this.size & (RING - 1);
+        this.kinds[slot] = (byte) kind.ordinal();
+        this.starts[slot] = this.lexer.tokenPos();
+        this.texts[slot] = kind == Kind.ID || kind == Kind.NUM
+                ? Token.text(this.lexer.source(), this.lexer.tokenStart(),
+                this.lexer.tokenLength())
+                : null;
+        this.size++;
+        if (kind == Kind.EOF)
+            this.lexer = null;
+    }
+
+    // where token i is in the arrays, lexing up to it if the source is
+    // streamed. -1 past the EOF
+    private int slot(int i)
+    {
+        if (this.texts == null)
+            return i < this.size ? i : -1;
+        while (this.size <= i && this.lexer != null)
+            lexNext();
+        if (i >= this.size)
+            return -1;
+        if (i < this.size - RING)
+            throw new IllegalStateException("token " + i + " is no longer buffered");
+        return i & (RING - 1);
+    }
+
+    public boolean isStreaming()
+    {
+        return this.texts != null;
+    }
+
+    private TokenBuffer(ByteBuffer source, int capacity)
+    {
+        this.source = source;
+        this.kinds = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+    }
+
+    // lex a whole source, splitting a large one into chunks at line
+    // boundaries and lexing them in parallel. As the language has no
+    // block comments or string literals, no token spans a newline.
+    public static TokenBuffer lex(ByteBuffer source)
+    {
+        int start = source.position();
+        int end = source.limit();
+        int chunks = Math.min(ForkJoinPool.getCommonPoolParallelism(),
+                (end - start) / MIN_CHUNK);
+        if (chunks < 2)
+            return new TokenBuffer(new Lexer(source));
+
+        ArrayList<Callable<TokenBuffer>> tasks = new ArrayList<>();
+        int chunkSize = (end - start) / chunks;
+        while (start < end)
+        {
+            int split = end;
+            if (end - start >= 2 * chunkSize)
+            {
+                split = start + chunkSize;
+                while (split < end && source.get(split - 1) != '\n')
+                    split++;
+            }
+            final int from = start, to = split;
+            tasks.add(() -> new TokenBuffer(new Lexer(source, from, to)));
+            start = split;
+        }
+
+        ArrayList<TokenBuffer> parts = new ArrayList<>();
+        try
+        {
+            for (Future<TokenBuffer> part : ForkJoinPool.commonPool().invokeAll(tasks))
+                parts.add(part.get());
+        } catch (InterruptedException | ExecutionException e)
+        {
+            System.out.println("Lexing was interrupted!");
+            e.printStackTrace();
+            System.exit(1);
+        }
+        return merge(source, parts);
+    }
+
+    // lex only source[start, end) of a source whose lines are known
+    // already, as when a part of it is parsed again
+    public static TokenBuffer lex(ByteBuffer source, int start, int end, LineMap lines)
+    {
+        TokenBuffer tokens = new TokenBuffer(new Lexer(source, start, end));
+        tokens.lines = lines;
+        return tokens;
+    }
+
+    // join the tokens of consecutive chunks, dropping all but the last EOF.
+    // Offsets are already in the whole source; a chunk starts a line, which
+    // the chunk before it has recorded too
+    private static TokenBuffer merge(ByteBuffer source, ArrayList<TokenBuffer> parts)
+    {
+        int capacity = 0;
+        for (TokenBuffer part : parts)
+            capacity += part.size;
+
+        TokenBuffer merged = new TokenBuffer(source, capacity);
+        merged.lines = parts.get(0).lines;
+        for (int p = 0; p < parts.size(); p++)
+        {
+            TokenBuffer part = parts.get(p);
+            int n = p == parts.size() - 1 ? part.size : part.size - 1;
+            System.arraycopy(part.kinds, 0, merged.kinds, merged.size, n);
+            System.arraycopy(part.starts, 0, merged.starts, merged.size, n);
+            System.arraycopy(part.lengths, 0, merged.lengths, merged.size, n);
+            merged.size += n;
+            if (p > 0)
+                merged.lines.append(part.lines);
+        }
+        return merged;
+    }
+
+    private void add(Kind kind, int start, int length)
+    {
+        if (this.size == this.kinds.length)
+        {
+            int capacity = this.size * 2;
+            this.kinds = Arrays.copyOf(this.kinds, capacity);
+            this.starts = Arrays.copyOf(this.starts, capacity);
+            this.lengths = Arrays.copyOf(this.lengths, capacity);
+        }
+        boolean hasLexeme = kind == Kind.ID || kind == Kind.NUM;
+        this.kinds[this.size] = (byte) kind.ordinal();
+        this.starts[this.size] = start;
+        this.lengths[this.size] = hasLexeme ? length : 0;
+        this.size++;
+    }
+
+    // number of tokens, or of those lexed so far of a streamed source
+    public int size()
+    {
+        return this.size;
+    }
+
+    public Kind kind(int i)
+    {
+        int slot = slot(i);
+        return slot < 0 ? Kind.EOF : kindValues[this.kinds[slot]];
+    }
+
+    // offset in the source of token i
+    public int pos(int i)
+    {
+        return this.starts[slot(i)];
+    }
+
+    public int line(int i)
+    {
+        return this.lines.line(pos(i));
+    }
+
+    public LineMap lines()
+    {
+        return this.lines;
+    }
+
+    // the identifier or number of token i, interned
+    public String lexeme(int i)
+    {
+        if (this.texts != null)
+            return this.texts[slot(i)];
+        return Token.text(this.source, this.starts[i], this.lengths[i]);
+    }
+
+    public int intValue(int i)
+    {
+        if (this.texts != null)
+        {
+            String text = this.texts[slot(i)];
+            return Token.intValue(ByteBuffer.wrap(
+                    text.getBytes(StandardCharsets.ISO_8859_1)), 0, text.length());
+        }
+        return Token.intValue(this.source, this.starts[i], this.lengths[i]);
+    }
+}
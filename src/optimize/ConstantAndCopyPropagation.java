@@ -2,6 +2,7 @@ package optimize;
 
 import ast.Ast;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /**
@@ -10,8 +11,7 @@ import java.util.HashMap;
 public class ConstantAndCopyPropagation implements ast.Visitor, Optimizable
 {
     private HashMap<String, Ast.Exp.T> conorcopy; // constant or copy in current method
-    private Ast.Exp.T curExp;
-    private boolean canChange;
+    private Ast.Exp.T curExp; // what the expression visited becomes
     private boolean inWhile; // if in while body, the left of assign should be delete from conorcopy
     private boolean isOptimizing;
 
@@ -26,6 +26,14 @@ public class ConstantAndCopyPropagation implements ast.Visitor, Optimizable
 
     }
 
+    // e with the constants and copies known put in. An expression is copied
+    // rather than changed, as it may be shared, see HashCons
+    private Ast.Exp.T propagate(Ast.Exp.T e)
+    {
+        this.visit(e);
+        return this.curExp;
+    }
+
     private HashMap<String, Ast.Exp.T> intersection(
             HashMap<String, Ast.Exp.T> first,
             HashMap<String, Ast.Exp.T> second)
@@ -54,45 +62,37 @@ public class ConstantAndCopyPropagation implements ast.Visitor, Optimizable
     @Override
     public void visit(Ast.Exp.Add e)
     {
-        this.visit(e.left);
-        if (this.canChange)
-            e.left = this.curExp;
-        this.visit(e.right);
-        if (this.canChange)
-            e.right = this.curExp;
-        this.canChange = false;
+        Ast.Exp.T left = propagate(e.left), right = propagate(e.right);
+        this.curExp = left == e.left && right == e.right ? e
+                : new Ast.Exp.Add(left, right, e.pos);
     }
 
     @Override
     public void visit(Ast.Exp.And e)
     {
-        this.visit(e.left);
-        if (this.canChange)
-            e.left = this.curExp;
-        this.visit(e.right);
-        if (this.canChange)
-            e.right = this.curExp;
-        this.canChange = false;
+        Ast.Exp.T left = propagate(e.left), right = propagate(e.right);
+        this.curExp = left == e.left && right == e.right ? e
+                : new Ast.Exp.And(left, right, e.pos);
     }
 
     @Override
     public void visit(Ast.Exp.Call e)
     {
         this.visit(e.exp);
-        for (int i = 0; i < e.args.size(); i++)
+        ArrayList<Ast.Exp.T> args = new ArrayList<>(e.args.size());
+        boolean changed = false;
+        for (Ast.Exp.T arg : e.args)
         {
-            this.visit(e.args.get(i));
-            if (this.canChange)
-                e.args.set(i, this.curExp);
+            args.add(propagate(arg));
+            changed |= args.get(args.size() - 1) != arg;
         }
-        this.canChange = false;
+        this.curExp = changed ? new Ast.Exp.Call(e.exp, e.id, args, e.nid, e.pos) : e;
     }
 
     @Override
     public void visit(Ast.Exp.False e)
     {
         this.curExp = e;
-        this.canChange = true;
     }
 
     @Override
@@ -101,80 +101,63 @@ public class ConstantAndCopyPropagation implements ast.Visitor, Optimizable
         if (this.conorcopy.containsKey(e.id))
         {
             this.isOptimizing = true;
-            this.canChange = true;
             this.curExp = this.conorcopy.get(e.id);
-        } else this.canChange = false;
+        } else this.curExp = e;
     }
 
     @Override
     public void visit(Ast.Exp.LT e)
     {
-        this.visit(e.left);
-        if (this.canChange)
-            e.left = this.curExp;
-        this.visit(e.right);
-        if (this.canChange)
-            e.right = this.curExp;
-        this.canChange = false;
+        Ast.Exp.T left = propagate(e.left), right = propagate(e.right);
+        this.curExp = left == e.left && right == e.right ? e
+                : new Ast.Exp.LT(left, right, e.pos);
     }
 
     @Override
     public void visit(Ast.Exp.NewObject e)
     {
-        this.canChange = false;
+        this.curExp = e;
     }
 
     @Override
     public void visit(Ast.Exp.Not e)
     {
-        this.visit(e.exp);
-        if (this.canChange)
-            e.exp = this.curExp;
-        this.canChange = false;
+        Ast.Exp.T exp = propagate(e.exp);
+        this.curExp = exp == e.exp ? e : new Ast.Exp.Not(exp, e.pos);
     }
 
     @Override
     public void visit(Ast.Exp.Num e)
     {
         this.curExp = e;
-        this.canChange = true;
     }
 
     @Override
     public void visit(Ast.Exp.Sub e)
     {
-        this.visit(e.left);
-        if (this.canChange)
-            e.left = this.curExp;
-        this.visit(e.right);
-        if (this.canChange)
-            e.right = this.curExp;
-        this.canChange = false;
+        Ast.Exp.T left = propagate(e.left), right = propagate(e.right);
+        this.curExp = left == e.left && right == e.right ? e
+                : new Ast.Exp.Sub(left, right, e.pos);
     }
 
     @Override
     public void visit(Ast.Exp.This e)
     {
-        this.canChange = false;
+        this.curExp = e;
     }
 
     @Override
     public void visit(Ast.Exp.Times e)
     {
-        this.visit(e.left);
-        if (this.canChange)
-            e.left = this.curExp;
-        this.visit(e.right);
-        if (this.canChange)
-            e.right = this.curExp;
-        this.canChange = false;
+        Ast.Exp.T left = propagate(e.left), right = propagate(e.right);
+        this.curExp = left == e.left && right == e.right ? e
+                : new Ast.Exp.Times(left, right, e.pos);
     }
 
     @Override
     public void visit(Ast.Exp.True e)
     {
         this.curExp = e;
-        this.canChange = true;
     }
 
     @Override
@@ -189,11 +172,7 @@ public class ConstantAndCopyPropagation implements ast.Visitor, Optimizable
 
         if (s.exp instanceof Ast.Exp.Id || s.exp instanceof Ast.Exp.Num)
             this.conorcopy.put(s.id, s.exp);
-        else
-        {
-            this.visit(s.exp);
-            if (this.canChange) s.exp = this.curExp;
-        }
+        else s.exp = propagate(s.exp);
     }
 
     @Override
@@ -207,9 +186,7 @@ public class ConstantAndCopyPropagation implements ast.Visitor, Optimizable
     {
         if (this.inWhile) return;
 
-        this.visit(s.condition);
-        if (this.canChange)
-            s.condition = this.curExp;
+        s.condition = propagate(s.condition);
 
         HashMap<String, Ast.Exp.T> _original = new HashMap<>();
         this.conorcopy.forEach(_original::put);
@@ -228,9 +205,7 @@ public class ConstantAndCopyPropagation implements ast.Visitor, Optimizable
     {
         if (this.inWhile) return;
 
-        this.visit(s.exp);
-        if (this.canChange)
-            s.exp = curExp;
+        s.exp = propagate(s.exp);
     }
 
     @Override
@@ -251,19 +226,13 @@ public class ConstantAndCopyPropagation implements ast.Visitor, Optimizable
     {
         this.conorcopy = new HashMap<>();
         m.stms.forEach(this::visit);
-        this.visit(m.retExp);
-        if (this.canChange)
-            m.retExp = this.curExp;
+        m.retExp = propagate(m.retExp);
     }
 
     @Override
     public void visit(Ast.Class.ClassSingle c)
     {
-        c.methods.forEach(m ->
-        {
-            this.canChange = false;
-            this.visit(m);
-        });
+        c.methods.forEach(this::visit);
     }
 
     @Override
@@ -5,14 +5,13 @@ import ast.Ast;
 /**
  * Created by Mengxu on 2017/1/23.
  */
-public class ConstantFolder implements ast.Visitor, Optimizable
+public class ConstantFolder extends LocalRewrite
 {
-    private Ast.Exp.T lastExp;
-    private boolean isOptimizing;
+    private final HashCons shared; // makes the constants folded to
 
-    private boolean isConstant()
+    public ConstantFolder(HashCons shared)
     {
-        return lastExp != null && this.isConstant(this.lastExp);
+        this.shared = shared;
     }
 
     private boolean isConstant(Ast.Exp.T exp)
@@ -23,249 +22,87 @@ public class ConstantFolder implements ast.Visitor, Optimizable
     }
 
     @Override
-    public void visit(Ast.Type.Boolean t) {}
-
-    @Override
-    public void visit(Ast.Type.ClassType t) {}
-
-    @Override
-    public void visit(Ast.Type.Int t) {}
-
-    @Override
-    public void visit(Ast.Dec.DecSingle d) {}
-
-    @Override
-    public void visit(Ast.Exp.Add e)
+    public Ast.Exp.T rewrite(Ast.Exp.Add e)
     {
-        this.visit(e.left);
-        if (isConstant())
+        if (isConstant(e.left) && isConstant(e.right))
         {
-            Ast.Exp.Num temLeft = (Ast.Exp.Num) this.lastExp;
-            this.visit(e.right);
-            if (isConstant())
-            {
-                this.isOptimizing = true;
-                this.lastExp = new Ast.Exp.Num(
-                        temLeft.num + ((Ast.Exp.Num) this.lastExp).num,
-                        this.lastExp.lineNum);
-            } else this.lastExp = new Ast.Exp.Add(temLeft, this.lastExp, this.lastExp.lineNum);
-        } else this.lastExp = e;
+            this.isOptimizing = true;
+            return this.shared.num(
+                    ((Ast.Exp.Num) e.left).num + ((Ast.Exp.Num) e.right).num,
+                    e.right.pos);
+        }
+        return e;
     }
 
     @Override
-    public void visit(Ast.Exp.And e)
+    public Ast.Exp.T rewrite(Ast.Exp.And e)
     {
-        this.visit(e.left);
-        Ast.Exp.T temLeft = this.lastExp;
-        this.visit(e.right);
-        Ast.Exp.T temRight = this.lastExp;
-
-        this.isOptimizing = true;
-        if (temLeft instanceof Ast.Exp.False
-                || temRight instanceof Ast.Exp.False)
-            this.lastExp = new Ast.Exp.False(e.lineNum);
-        else if (temLeft instanceof Ast.Exp.True
-                && temRight instanceof Ast.Exp.True)
-            this.lastExp = temLeft;
-        else if (temLeft instanceof Ast.Exp.True)
-            this.lastExp = temRight;
-        else if (temRight instanceof Ast.Exp.True)
-            this.lastExp = temLeft;
-        else
+        if (e.left instanceof Ast.Exp.False
+                || e.right instanceof Ast.Exp.False)
         {
-            this.isOptimizing = false;
-            this.lastExp = e;
+            this.isOptimizing = true;
+            return this.shared.bool(false, e.pos);
         }
-    }
-
-    @Override
-    public void visit(Ast.Exp.Call e)
-    {
-        java.util.LinkedList<Ast.Exp.T> _args = new java.util.LinkedList<>();
-        e.args.forEach(arg ->
+        if (e.left instanceof Ast.Exp.True)
         {
-            this.visit(arg);
-            _args.add(this.lastExp);
-        });
-        e.args = _args;
-        this.lastExp = e;
-    }
-
-    @Override
-    public void visit(Ast.Exp.False e)
-    {
-        this.lastExp = e;
-    }
-
-    @Override
-    public void visit(Ast.Exp.Id e)
-    {
-        this.lastExp = e;
-    }
-
-    @Override
-    public void visit(Ast.Exp.LT e)
-    {
-        this.visit(e.left);
-        if (isConstant())
+            this.isOptimizing = true;
+            return e.right;
+        }
+        if (e.right instanceof Ast.Exp.True)
         {
-            Ast.Exp.Num temLeft = (Ast.Exp.Num) this.lastExp;
-            this.visit(e.right);
-            if (isConstant())
-            {
-                this.isOptimizing = true;
-                this.lastExp = temLeft.num < ((Ast.Exp.Num) this.lastExp).num
-                        ? new Ast.Exp.True(this.lastExp.lineNum)
-                        : new Ast.Exp.False(this.lastExp.lineNum);
-            }
-            else this.lastExp = new Ast.Exp.LT(temLeft, this.lastExp, this.lastExp.lineNum);
-        } else this.lastExp = e;
-    }
-
-    @Override
-    public void visit(Ast.Exp.NewObject e)
-    {
-        this.lastExp = e;
+            this.isOptimizing = true;
+            return e.left;
+        }
+        return e;
     }
 
     @Override
-    public void visit(Ast.Exp.Not e)
+    public Ast.Exp.T rewrite(Ast.Exp.LT e)
     {
-        this.visit(e.exp);
-        if (isConstant())
+        if (isConstant(e.left) && isConstant(e.right))
         {
             this.isOptimizing = true;
-            this.lastExp = this.lastExp instanceof Ast.Exp.True
-                    ? new Ast.Exp.False(this.lastExp.lineNum)
-                    : new Ast.Exp.True(this.lastExp.lineNum);
+            return this.shared.bool(
+                    ((Ast.Exp.Num) e.left).num < ((Ast.Exp.Num) e.right).num,
+                    e.right.pos);
         }
-        else this.lastExp = e;
-    }
-
-    @Override
-    public void visit(Ast.Exp.Num e)
-    {
-        this.lastExp = e;
+        return e;
     }
 
     @Override
-    public void visit(Ast.Exp.Sub e)
+    public Ast.Exp.T rewrite(Ast.Exp.Not e)
     {
-        this.visit(e.left);
-        if (isConstant())
+        if (isConstant(e.exp))
         {
-            Ast.Exp.Num temLeft = (Ast.Exp.Num) this.lastExp;
-            this.visit(e.right);
-            if (isConstant())
-            {
-                this.isOptimizing = true;
-                this.lastExp = new Ast.Exp.Num(
-                        temLeft.num - ((Ast.Exp.Num) this.lastExp).num,
-                        this.lastExp.lineNum);
-            }
-            else this.lastExp = new Ast.Exp.Sub(temLeft, this.lastExp, this.lastExp.lineNum);
-        } else this.lastExp = e;
-    }
-
-    @Override
-    public void visit(Ast.Exp.This e)
-    {
-        this.lastExp = e;
+            this.isOptimizing = true;
+            return this.shared.bool(e.exp instanceof Ast.Exp.False, e.exp.pos);
+        }
+        return e;
     }
 
     @Override
-    public void visit(Ast.Exp.Times e)
+    public Ast.Exp.T rewrite(Ast.Exp.Sub e)
     {
-        this.visit(e.left);
-        if (isConstant())
+        if (isConstant(e.left) && isConstant(e.right))
         {
-            Ast.Exp.Num temLeft = (Ast.Exp.Num) this.lastExp;
-            this.visit(e.right);
-            if (isConstant())
-            {
-                this.isOptimizing = true;
-                this.lastExp = new Ast.Exp.Num(
-                        temLeft.num * ((Ast.Exp.Num) this.lastExp).num,
-                        this.lastExp.lineNum);
-            }
-            else this.lastExp = new Ast.Exp.Times(temLeft, this.lastExp, this.lastExp.lineNum);
-        } else this.lastExp = e;
-    }
-
-    @Override
-    public void visit(Ast.Exp.True e)
-    {
-        this.lastExp = e;
-    }
-
-    @Override
-    public void visit(Ast.Stm.Assign s)
-    {
-        this.visit(s.exp);
-        s.exp = this.lastExp;
-    }
-
-    @Override
-    public void visit(Ast.Stm.Block s)
-    {
-        s.stms.forEach(this::visit);
-    }
-
-    @Override
-    public void visit(Ast.Stm.If s)
-    {
-        this.visit(s.condition);
-        s.condition = this.lastExp;
-        this.visit(s.then_stm);
-        this.visit(s.else_stm);
-    }
-
-    @Override
-    public void visit(Ast.Stm.Print s)
-    {
-        this.visit(s.exp);
-        s.exp = this.lastExp;
-    }
-
-    @Override
-    public void visit(Ast.Stm.While s)
-    {
-        this.visit(s.condition);
-        s.condition = this.lastExp;
-        this.visit(s.body);
-    }
-
-    @Override
-    public void visit(Ast.Method.MethodSingle m)
-    {
-        m.stms.forEach(this::visit);
-        this.visit(m.retExp);
-        m.retExp = this.lastExp;
-    }
-
-    @Override
-    public void visit(Ast.Class.ClassSingle c)
-    {
-        c.methods.forEach(this::visit);
-    }
-
-    @Override
-    public void visit(Ast.MainClass.MainClassSingle c)
-    {
-        this.visit(c.stm);
-    }
-
-    @Override
-    public void visit(Ast.Program.ProgramSingle p)
-    {
-        this.isOptimizing = false;
-        this.visit(p.mainClass);
-        p.classes.forEach(this::visit);
+            this.isOptimizing = true;
+            return this.shared.num(
+                    ((Ast.Exp.Num) e.left).num - ((Ast.Exp.Num) e.right).num,
+                    e.right.pos);
+        }
+        return e;
     }
 
     @Override
-    public boolean isOptimizing()
+    public Ast.Exp.T rewrite(Ast.Exp.Times e)
     {
-        return this.isOptimizing;
+        if (isConstant(e.left) && isConstant(e.right))
+        {
+            this.isOptimizing = true;
+            return this.shared.num(
+                    ((Ast.Exp.Num) e.left).num * ((Ast.Exp.Num) e.right).num,
+                    e.right.pos);
+        }
+        return e;
     }
 }
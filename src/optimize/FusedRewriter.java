@@ -0,0 +1,298 @@
+package optimize;
+
+import ast.Ast;
+
+import java.util.ArrayList;
+
+/**
+ * Walks each method once and runs all of its LocalRewrites on every node
+ * on the way back up, instead of walking the program once per rewrite.
+ * The rewrites see the node in their order; once one of them replaces the
+ * node, the ones after it do not see it until the next round.
+ * A statement deleted from a list is dropped, one deleted from an if or a
+ * while becomes an empty block, as the code generator wants one there.
+ * An expression whose children change is copied, as it may be shared, see
+ * HashCons.
+ */
+public class FusedRewriter implements ast.Visitor
+{
+    private final LocalRewrite[] rewrites;
+    private Ast.Exp.T lastExp;
+    private Ast.Stm.T lastStm;
+
+    public FusedRewriter(LocalRewrite... rewrites)
+    {
+        this.rewrites = rewrites;
+    }
+
+    private Ast.Exp.T walk(Ast.Exp.T e)
+    {
+        this.visit(e);
+        return this.lastExp;
+    }
+
+    private Ast.Stm.T walk(Ast.Stm.T s)
+    {
+        this.visit(s);
+        return this.lastStm != null
+                ? this.lastStm
+                : new Ast.Stm.Block(new ArrayList<>(), s.pos);
+    }
+
+    private ArrayList<Ast.Stm.T> walk(ArrayList<Ast.Stm.T> stms)
+    {
+        ArrayList<Ast.Stm.T> _stms = new ArrayList<>(stms.size());
+        for (Ast.Stm.T stm : stms)
+        {
+            this.visit(stm);
+            if (this.lastStm != null)
+                _stms.add(this.lastStm);
+        }
+        return _stms;
+    }
+
+    @Override
+    public void visit(Ast.Type.Boolean t) {}
+
+    @Override
+    public void visit(Ast.Type.ClassType t) {}
+
+    @Override
+    public void visit(Ast.Type.Int t) {}
+
+    @Override
+    public void visit(Ast.Dec.DecSingle d) {}
+
+    @Override
+    public void visit(Ast.Exp.Add e)
+    {
+        Ast.Exp.T left = walk(e.left), right = walk(e.right);
+        if (left != e.left || right != e.right)
+            e = new Ast.Exp.Add(left, right, e.pos);
+        Ast.Exp.T r = e;
+        for (int i = 0; i < this.rewrites.length && r == e; i++)
+            r = this.rewrites[i].rewrite(e);
+        this.lastExp = r;
+    }
+
+    @Override
+    public void visit(Ast.Exp.And e)
+    {
+        Ast.Exp.T left = walk(e.left), right = walk(e.right);
+        if (left != e.left || right != e.right)
+            e = new Ast.Exp.And(left, right, e.pos);
+        Ast.Exp.T r = e;
+        for (int i = 0; i < this.rewrites.length && r == e; i++)
+            r = this.rewrites[i].rewrite(e);
+        this.lastExp = r;
+    }
+
+    @Override
+    public void visit(Ast.Exp.Call e)
+    {
+        Ast.Exp.T exp = walk(e.exp);
+        ArrayList<Ast.Exp.T> args = new ArrayList<>(e.args.size());
+        boolean changed = exp != e.exp;
+        for (Ast.Exp.T arg : e.args)
+        {
+            args.add(walk(arg));
+            changed |= args.get(args.size() - 1) != arg;
+        }
+        if (changed)
+            e = new Ast.Exp.Call(exp, e.id, args, e.nid, e.pos);
+        Ast.Exp.T r = e;
+        for (int i = 0; i < this.rewrites.length && r == e; i++)
+            r = this.rewrites[i].rewrite(e);
+        this.lastExp = r;
+    }
+
+    @Override
+    public void visit(Ast.Exp.False e)
+    {
+        Ast.Exp.T r = e;
+        for (int i = 0; i < this.rewrites.length && r == e; i++)
+            r = this.rewrites[i].rewrite(e);
+        this.lastExp = r;
+    }
+
+    @Override
+    public void visit(Ast.Exp.Id e)
+    {
+        Ast.Exp.T r = e;
+        for (int i = 0; i < this.rewrites.length && r == e; i++)
+            r = this.rewrites[i].rewrite(e);
+        this.lastExp = r;
+    }
+
+    @Override
+    public void visit(Ast.Exp.LT e)
+    {
+        Ast.Exp.T left = walk(e.left), right = walk(e.right);
+        if (left != e.left || right != e.right)
+            e = new Ast.Exp.LT(left, right, e.pos);
+        Ast.Exp.T r = e;
+        for (int i = 0; i < this.rewrites.length && r == e; i++)
+            r = this.rewrites[i].rewrite(e);
+        this.lastExp = r;
+    }
+
+    @Override
+    public void visit(Ast.Exp.NewObject e)
+    {
+        Ast.Exp.T r = e;
+        for (int i = 0; i < this.rewrites.length && r == e; i++)
+            r = this.rewrites[i].rewrite(e);
+        this.lastExp = r;
+    }
+
+    @Override
+    public void visit(Ast.Exp.Not e)
+    {
+        Ast.Exp.T exp = walk(e.exp);
+        if (exp != e.exp)
+            e = new Ast.Exp.Not(exp, e.pos);
+        Ast.Exp.T r = e;
+        for (int i = 0; i < this.rewrites.length && r == e; i++)
+            r = this.rewrites[i].rewrite(e);
+        this.lastExp = r;
+    }
+
+    @Override
+    public void visit(Ast.Exp.Num e)
+    {
+        Ast.Exp.T r = e;
+        for (int i = 0; i < this.rewrites.length && r == e; i++)
+            r = this.rewrites[i].rewrite(e);
+        this.lastExp = r;
+    }
+
+    @Override
+    public void visit(Ast.Exp.Sub e)
+    {
+        Ast.Exp.T left = walk(e.left), right = walk(e.right);
+        if (left != e.left || right != e.right)
+            e = new Ast.Exp.Sub(left, right, e.pos);
+        Ast.Exp.T r = e;
+        for (int i = 0; i < this.rewrites.length && r == e; i++)
+            r = this.rewrites[i].rewrite(e);
+        this.lastExp = r;
+    }
+
+    @Override
+    public void visit(Ast.Exp.This e)
+    {
+        Ast.Exp.T r = e;
+        for (int i = 0; i < this.rewrites.length && r == e; i++)
+            r = this.rewrites[i].rewrite(e);
+        this.lastExp = r;
+    }
+
+    @Override
+    public void visit(Ast.Exp.Times e)
+    {
+        Ast.Exp.T left = walk(e.left), right = walk(e.right);
+        if (left != e.left || right != e.right)
+            e = new Ast.Exp.Times(left, right, e.pos);
+        Ast.Exp.T r = e;
+        for (int i = 0; i < this.rewrites.length && r == e; i++)
+            r = this.rewrites[i].rewrite(e);
+        this.lastExp = r;
+    }
+
+    @Override
+    public void visit(Ast.Exp.True e)
+    {
+        Ast.Exp.T r = e;
+        for (int i = 0; i < this.rewrites.length && r == e; i++)
+            r = this.rewrites[i].rewrite(e);
+        this.lastExp = r;
+    }
+
+    @Override
+    public void visit(Ast.Stm.Assign s)
+    {
+        s.exp = walk(s.exp);
+        Ast.Stm.T r = s;
+        for (int i = 0; i < this.rewrites.length && r == s; i++)
+            r = this.rewrites[i].rewrite(s);
+        this.lastStm = r;
+    }
+
+    @Override
+    public void visit(Ast.Stm.Block s)
+    {
+        s.stms = walk(s.stms);
+        Ast.Stm.T r = s;
+        for (int i = 0; i < this.rewrites.length && r == s; i++)
+            r = this.rewrites[i].rewrite(s);
+        this.lastStm = r;
+    }
+
+    @Override
+    public void visit(Ast.Stm.If s)
+    {
+        s.condition = walk(s.condition);
+        s.then_stm = walk(s.then_stm);
+        s.else_stm = walk(s.else_stm);
+        Ast.Stm.T r = s;
+        for (int i = 0; i < this.rewrites.length && r == s; i++)
+            r = this.rewrites[i].rewrite(s);
+        this.lastStm = r;
+    }
+
+    @Override
+    public void visit(Ast.Stm.Print s)
+    {
+        s.exp = walk(s.exp);
+        Ast.Stm.T r = s;
+        for (int i = 0; i < this.rewrites.length && r == s; i++)
+            r = this.rewrites[i].rewrite(s);
+        this.lastStm = r;
+    }
+
+    @Override
+    public void visit(Ast.Stm.While s)
+    {
+        s.condition = walk(s.condition);
+        s.body = walk(s.body);
+        Ast.Stm.T r = s;
+        for (int i = 0; i < this.rewrites.length && r == s; i++)
+            r = this.rewrites[i].rewrite(s);
+        this.lastStm = r;
+    }
+
+    @Override
+    public void visit(Ast.Method.MethodSingle m)
+    {
+        for (LocalRewrite rewrite : this.rewrites)
+            rewrite.enter(m);
+        m.stms = walk(m.stms);
+        m.retExp = walk(m.retExp);
+        for (LocalRewrite rewrite : this.rewrites)
+            rewrite.exit(m);
+    }
+
+    @Override
+    public void visit(Ast.Class.ClassSingle c)
+    {
+        c.methods.forEach(this::visit);
+    }
+
+    @Override
+    public void visit(Ast.MainClass.MainClassSingle c)
+    {
+        c.stm = walk(c.stm);
+    }
+
+    @Override
+    public void visit(Ast.Program.ProgramSingle p)
+    {
+        for (LocalRewrite rewrite : this.rewrites)
+        {
+            rewrite.isOptimizing = false;
+            rewrite.lines = p.lines;
+        }
+        this.visit(p.mainClass);
+        p.classes.forEach(this::visit);
+    }
+}
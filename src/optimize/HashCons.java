@@ -0,0 +1,208 @@
+package optimize;
+
+import ast.Ast;
+
+import java.util.HashMap;
+
+/**
+ * Makes all the equal pure expressions of a program one node: a number,
+ * true, false, this, an id, and the operators over them. Two pure
+ * expressions are then equal exactly when they are the same node, and a
+ * constant costs one node however often it is written or folded to. A call
+ * or new C() gives another value each time, so it is never shared, nor is
+ * anything over it. Ids, and so the operators over them, are only shared
+ * within a method, where an id names one variable of one type.
+ * A shared node keeps the position of the first one seen, which is why this
+ * only runs in the optimizer, once the positions of expressions are no
+ * longer reported, and the optimizer copies an expression it changes
+ * rather than changing it in place.
+ */
+public class HashCons extends LocalRewrite
+{
+    private final HashMap<Integer, Ast.Exp.Num> nums = new HashMap<>();
+    private Ast.Exp.True _true;
+    private Ast.Exp.False _false;
+    private Ast.Exp.This _this;
+    // of the method walked
+    private final HashMap<String, Ast.Exp.Id> ids = new HashMap<>();
+    private final HashMap<Key, Ast.Exp.T> exps = new HashMap<>();
+
+    // an operator over shared children, which are equal when they are the
+    // same node
+    private static class Key
+    {
+        final Class<?> op;
+        final Ast.Exp.T left, right; // right is null for a !
+
+        Key(Class<?> op, Ast.Exp.T left, Ast.Exp.T right)
+        {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return this.op == k.op && this.left == k.left && this.right == k.right;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (this.op.hashCode() * 31 + System.identityHashCode(this.left)) * 31
+                    + System.identityHashCode(this.right);
+        }
+    }
+
+    public Ast.Exp.Num num(int num, int pos)
+    {
+        Ast.Exp.Num e = this.nums.get(num);
+        if (e == null)
+        {
+            e = new Ast.Exp.Num(num, pos);
+            this.nums.put(num, e);
+        }
+        return e;
+    }
+
+    public Ast.Exp.T bool(boolean b, int pos)
+    {
+        if (b)
+        {
+            if (this._true == null)
+                this._true = new Ast.Exp.True(pos);
+            return this._true;
+        }
+        if (this._false == null)
+            this._false = new Ast.Exp.False(pos);
+        return this._false;
+    }
+
+    // whether e is the node all the expressions equal to it share
+    private boolean isShared(Ast.Exp.T e)
+    {
+        if (e instanceof Ast.Exp.Num)
+            return this.nums.get(((Ast.Exp.Num) e).num) == e;
+        if (e instanceof Ast.Exp.Id)
+            return this.ids.get(((Ast.Exp.Id) e).id) == e;
+        Key key = key(e);
+        return key != null ? this.exps.get(key) == e
+                : e == this._true || e == this._false || e == this._this;
+    }
+
+    // of an operator, null for any other node
+    private static Key key(Ast.Exp.T e)
+    {
+        if (e instanceof Ast.Exp.Not)
+            return new Key(Ast.Exp.Not.class, ((Ast.Exp.Not) e).exp, null);
+        if (e instanceof Ast.Exp.Add)
+            return new Key(Ast.Exp.Add.class, ((Ast.Exp.Add) e).left, ((Ast.Exp.Add) e).right);
+        if (e instanceof Ast.Exp.And)
+            return new Key(Ast.Exp.And.class, ((Ast.Exp.And) e).left, ((Ast.Exp.And) e).right);
+        if (e instanceof Ast.Exp.LT)
+            return new Key(Ast.Exp.LT.class, ((Ast.Exp.LT) e).left, ((Ast.Exp.LT) e).right);
+        if (e instanceof Ast.Exp.Sub)
+            return new Key(Ast.Exp.Sub.class, ((Ast.Exp.Sub) e).left, ((Ast.Exp.Sub) e).right);
+        if (e instanceof Ast.Exp.Times)
+            return new Key(Ast.Exp.Times.class, ((Ast.Exp.Times) e).left, ((Ast.Exp.Times) e).right);
+        return null;
+    }
+
+    private Ast.Exp.T share(Ast.Exp.T e, Ast.Exp.T left, Ast.Exp.T right)
+    {
+        if (!isShared(left) || (right != null && !isShared(right)))
+            return e;
+        return this.exps.computeIfAbsent(new Key(e.getClass(), left, right), k -> e);
+    }
+
+    @Override
+    public void enter(Ast.Method.MethodSingle m)
+    {
+        this.ids.clear();
+        this.exps.clear();
+    }
+
+    // and again after it, for the main class walked next round
+    @Override
+    public void exit(Ast.Method.MethodSingle m)
+    {
+        this.ids.clear();
+        this.exps.clear();
+    }
+
+    @Override
+    public Ast.Exp.T rewrite(Ast.Exp.Add e)
+    {
+        return share(e, e.left, e.right);
+    }
+
+    @Override
+    public Ast.Exp.T rewrite(Ast.Exp.And e)
+    {
+        return share(e, e.left, e.right);
+    }
+
+    @Override
+    public Ast.Exp.T rewrite(Ast.Exp.False e)
+    {
+        if (this._false == null)
+            this._false = e;
+        return this._false;
+    }
+
+    @Override
+    public Ast.Exp.T rewrite(Ast.Exp.Id e)
+    {
+        return this.ids.computeIfAbsent(e.id, id -> e);
+    }
+
+    @Override
+    public Ast.Exp.T rewrite(Ast.Exp.LT e)
+    {
+        return share(e, e.left, e.right);
+    }
+
+    @Override
+    public Ast.Exp.T rewrite(Ast.Exp.Not e)
+    {
+        return share(e, e.exp, null);
+    }
+
+    @Override
+    public Ast.Exp.T rewrite(Ast.Exp.Num e)
+    {
+        return this.nums.computeIfAbsent(e.num, num -> e);
+    }
+
+    @Override
+    public Ast.Exp.T rewrite(Ast.Exp.Sub e)
+    {
+        return share(e, e.left, e.right);
+    }
+
+    @Override
+    public Ast.Exp.T rewrite(Ast.Exp.This e)
+    {
+        if (this._this == null)
+            this._this = e;
+        return this._this;
+    }
+
+    @Override
+    public Ast.Exp.T rewrite(Ast.Exp.Times e)
+    {
+        return share(e, e.left, e.right);
+    }
+
+    @Override
+    public Ast.Exp.T rewrite(Ast.Exp.True e)
+    {
+        if (this._true == null)
+            this._true = e;
+        return this._true;
+    }
+}
@@ -0,0 +1,119 @@
+package optimize;
+
+import ast.Ast;
+import lexer.LineMap;
+
+/**
+ * A rewrite that only looks at a node and what its children have already
+ * been rewritten to, so that any number of them can share one walk of a
+ * method, see FusedRewriter. Each hook is called once the children of its
+ * node are done, and returns what the node becomes: the node itself by
+ * default, another node, or for a statement null to delete it.
+ */
+public abstract class LocalRewrite implements Optimizable
+{
+    protected boolean isOptimizing;
+    protected LineMap lines; // of the program walked, for warnings
+
+    // before and after the body of a method; the statement of the main
+    // class is walked outside of any method
+    public void enter(Ast.Method.MethodSingle m) {}
+
+    public void exit(Ast.Method.MethodSingle m) {}
+
+    public Ast.Exp.T rewrite(Ast.Exp.Add e)
+    {
+        return e;
+    }
+
+    public Ast.Exp.T rewrite(Ast.Exp.And e)
+    {
+        return e;
+    }
+
+    public Ast.Exp.T rewrite(Ast.Exp.Call e)
+    {
+        return e;
+    }
+
+    public Ast.Exp.T rewrite(Ast.Exp.False e)
+    {
+        return e;
+    }
+
+    public Ast.Exp.T rewrite(Ast.Exp.Id e)
+    {
+        return e;
+    }
+
+    public Ast.Exp.T rewrite(Ast.Exp.LT e)
+    {
+        return e;
+    }
+
+    public Ast.Exp.T rewrite(Ast.Exp.NewObject e)
+    {
+        return e;
+    }
+
+    public Ast.Exp.T rewrite(Ast.Exp.Not e)
+    {
+        return e;
+    }
+
+    public Ast.Exp.T rewrite(Ast.Exp.Num e)
+    {
+        return e;
+    }
+
+    public Ast.Exp.T rewrite(Ast.Exp.Sub e)
+    {
+        return e;
+    }
+
+    public Ast.Exp.T rewrite(Ast.Exp.This e)
+    {
+        return e;
+    }
+
+    public Ast.Exp.T rewrite(Ast.Exp.Times e)
+    {
+        return e;
+    }
+
+    public Ast.Exp.T rewrite(Ast.Exp.True e)
+    {
+        return e;
+    }
+
+    public Ast.Stm.T rewrite(Ast.Stm.Assign s)
+    {
+        return s;
+    }
+
+    public Ast.Stm.T rewrite(Ast.Stm.Block s)
+    {
+        return s;
+    }
+
+    public Ast.Stm.T rewrite(Ast.Stm.If s)
+    {
+        return s;
+    }
+
+    public Ast.Stm.T rewrite(Ast.Stm.Print s)
+    {
+        return s;
+    }
+
+    public Ast.Stm.T rewrite(Ast.Stm.While s)
+    {
+        return s;
+    }
+
+    @Override
+    public boolean isOptimizing()
+    {
+        return this.isOptimizing;
+    }
+}
@@ -9,18 +9,21 @@ public class Optimizer
     {
         UnUsedVarDel varDeler = new UnUsedVarDel();
         varDeler.givesWarning = true;
-        ConstantFolder folder = new ConstantFolder();
+        HashCons shared = new HashCons();
+        ConstantFolder folder = new ConstantFolder(shared);
         UnReachableDel deler = new UnReachableDel();
+        // the local rewrites share one walk; the two dataflow passes need
+        // the statements of a method in order, so each walks on its own.
+        // Sharing comes last, so the others see every node it replaces
+        FusedRewriter rewriter = new FusedRewriter(varDeler, folder, deler, shared);
         DeadCodeDel deadDeler = new DeadCodeDel();
         ConstantAndCopyPropagation proper = new ConstantAndCopyPropagation();
 
         boolean flag;
         do
         {
-            varDeler.visit(prog);
+            rewriter.visit(prog);
             varDeler.givesWarning = false;
-            folder.visit(prog);
-            deler.visit(prog);
             deadDeler.visit(prog);
             proper.visit(prog);
             flag = varDeler.isOptimizing()
@@ -2,113 +2,367 @@ package parser;
 
 import ast.Ast;
 import lexer.Lexer;
-import lexer.Token;
+import lexer.LineMap;
 import lexer.Token.Kind;
+import lexer.TokenBuffer;
 
 import java.io.InputStream;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Created by Mengxu on 2017/1/11.
  */
 public class Parser
 {
-    private Lexer lexer;
-    private Token current;
+    private TokenBuffer tokens;
+    private int pos; // index of the current token
+    private Kind current; // kind of the current token
+    private int braceDepth; // { minus } among the tokens before pos
+    private int nids; // the nid of token 0, above those of the program edited
 
     // for vardecl parser
     private boolean isValDecl;
-    private boolean isMarking;
-    private Queue<Token> markedTokens;
+    // leave method bodies to be parsed when a later phase visits them,
+    // and drop the methods never called, see parseMethodDecls
+    public boolean lazyBodies;
+    private HashSet<String> called; // names after a '.', when lazyBodies
+    // the classes of a program are parsed in parallel when they have at
+    // least this many tokens
+    public int minParallel = 1 << 16;
+    // a parser of some of the classes, run in parallel, gives up with a
+    // ParseError instead of reporting it
+    private boolean failFast;
+    // syntax errors found so far, shared with the parsers of lazy bodies
+    private ArrayList<String> diagnostics = new ArrayList<>();
+
+    // pending operators of the expression being parsed, each with its left
+    // operand. An open ( is kept as Lparen over a null operand, an open
+    // argument list as Dot over its Call, and the !s before either in
+    // openNots. parseExp does not call itself, so nesting depth is bounded
+    // by the heap, not the stack
+    private Kind[] operators = new Kind[16];
+    private Ast.Exp.T[] operands = new Ast.Exp.T[16];
+    private int pending;
+    private int[] openNots = new int[16];
+    private int open;
+    // blocks, ifs and whiles whose statements are still being parsed
+    private final ArrayList<Ast.Stm.T> openStms = new ArrayList<>();
+    // the edit to parse into a program parsed before, see edited()
+    private Edit edit;
 
     public Parser(InputStream fstream)
     {
-        lexer = new Lexer(fstream);
-        current = lexer.nextToken();
-        isMarking = false;
-        markedTokens = new LinkedList<>();
+        this(new Lexer(fstream));
+    }
+
+    public Parser(ByteBuffer source)
+    {
+        this(TokenBuffer.lex(source));
+    }
+
+    public Parser(Lexer lexer)
+    {
+        this(new TokenBuffer(lexer));
+    }
+
+    public Parser(TokenBuffer tokens)
+    {
+        this(tokens, 0);
+    }
+
+    private Parser(TokenBuffer tokens, int start)
+    {
+        this.tokens = tokens;
+        this.pos = start;
+        this.current = tokens.kind(start);
+    }
+
+    // thrown on a syntax error, once it is recorded, to unwind to where
+    // the parser can pick up again
+    private static class ParseError extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        ParseError()
+        {
+            super(null, null, false, false);
+        }
+    }
+
+    // an edit of the source of a program, and the method or class it is in,
+    // which the tokens of an edited() parser are the new source of
+    private static class Edit
+    {
+        Ast.Program.ProgramSingle program; // as parsed before the edit
+        ByteBuffer source; // after the edit
+        LineMap lines; // of source
+        int delta; // change in length
+        Ast.MainClass.MainClassSingle main; // the main class it is in, or
+        Ast.Class.ClassSingle c; // the class it is in,
+        int method = -1; // and the index of its method it is in, if any
+    }
+
+    // a parser of source, the source previous was parsed from once bytes
+    // [start, oldEnd) of it were replaced by source[start, newEnd). Only the
+    // method or class the edit is within, found by the offsets of its first
+    // token and closing brace kept in the tree, is lexed and parsed again.
+    // parse() puts it in place of the old one, moves the nodes after it, and
+    // returns previous. When the edit is within none, or its method or class
+    // no longer parses to one alone, the whole source is parsed. previous
+    // has to be a program without syntax errors, not parsed lazyBodies and
+    // not optimized, as the optimizer shares expressions, see optimize.HashCons
+    public static Parser edited(Ast.Program.T previous, ByteBuffer source,
+                                int start, int oldEnd, int newEnd)
+    {
+        Edit edit = new Edit();
+        edit.program = (Ast.Program.ProgramSingle) previous;
+        edit.source = source;
+        edit.lines = edit.program.lines.edit(source, start, oldEnd, newEnd);
+        edit.delta = newEnd - oldEnd;
+
+        int from = -1, to = -1; // offsets of the method or class before
+        Ast.MainClass.MainClassSingle main = (Ast.MainClass.MainClassSingle) edit.program.mainClass;
+        if (main.start < start && oldEnd < main.end)
+        {
+            edit.main = main;
+            from = main.start;
+            to = main.end;
+        }
+        for (Ast.Class.T t : edit.program.classes)
+        {
+            Ast.Class.ClassSingle c = (Ast.Class.ClassSingle) t;
+            if (c.start < start && oldEnd < c.end)
+            {
+                edit.c = c;
+                from = c.start;
+                to = c.end;
+                for (int i = 0; i < c.methods.size(); i++)
+                {
+                    Ast.Method.MethodSingle m = (Ast.Method.MethodSingle) c.methods.get(i);
+                    if (m.start < start && oldEnd < m.end)
+                    {
+                        edit.method = i;
+                        from = m.start;
+                        to = m.end;
+                    }
+                }
+                break;
+            }
+        }
+
+        if (from < 0)
+            return new Parser(source);
+        Parser parser = new Parser(TokenBuffer.lex(source, from, to + edit.delta, edit.lines));
+        parser.edit = edit;
+        parser.nids = edit.program.nids;
+        return parser;
+    }
+
+    // whether the program parsed has no syntax errors
+    public boolean isOK()
+    {
+        return diagnostics.isEmpty();
+    }
+
+    // one message per syntax error, in the order they were found
+    public ArrayList<String> diagnostics()
+    {
+        return diagnostics;
     }
 
     // utility methods
     private void advance()
     {
-        if (isMarking)
-        {
-            current = lexer.nextToken();
-            markedTokens.offer(current);
-        } else if (!markedTokens.isEmpty())
-            current = markedTokens.poll();
-        else current = lexer.nextToken();
+        if (current == Kind.EOF) // stay on EOF
+            return;
+        if (current == Kind.Lbrace)
+            braceDepth++;
+        else if (current == Kind.Rbrace)
+            braceDepth--;
+        pos++;
+        current = tokens.kind(pos);
     }
 
-    // start recording the tokens
-    private void mark()
+    // kind of the token k ahead of the current one, EOF past the end
+    private Kind peek(int k)
     {
-        isMarking = true;
-        markedTokens.offer(current);
+        return tokens.kind(pos + k);
     }
 
-    // stop recording the tokens and clear recorded
-    private void unMark()
+    // source offset of the current token, which is what ast nodes keep
+    private int currentPos()
     {
-        isMarking = false;
-        markedTokens.clear();
+        return tokens.pos(pos);
     }
 
-    // reset current token and stop recording
-    private void reset()
+    // nid of a node made at the current token, which no other node is. The
+    // parsers of the classes in parallel and of lazy bodies share the
+    // tokens, so they hand out the same ones as a parse from the start
+    private int nid()
     {
-        isMarking = false;
-        advance();
+        return nids + pos;
+    }
+
+    // line:column of the current token
+    private String currentPosition()
+    {
+        return tokens.lines().position(tokens.pos(pos));
+    }
+
+    private String lexeme()
+    {
+        return tokens.lexeme(pos);
     }
 
     private void eatToken(Kind kind)
     {
-        if (kind == current.kind)
+        if (kind == current)
             advance();
         else
-        {
-            System.out.println("Line " + current.lineNum + " :" +
+            syntaxError("Line " + currentPosition() + " :" +
                     "Expects: " + kind.toString() +
-                    ", but got: " + current.kind.toString());
-            System.exit(1);
-        }
+                    ", but got: " + current.toString());
     }
 
     private void error()
     {
-        System.out.println("Syntax error at line " +
-                (current != null ? current.lineNum + "" : "unknow")
+        syntaxError("Syntax error at line " + currentPosition()
                 + " compilation aborting...\n");
-        System.exit(1);
     }
 
-    // parse methods
+    private void syntaxError(String message)
+    {
+        if (!failFast)
+            diagnostics.add(message);
+        throw new ParseError();
+    }
 
-    // ExpList -> Exp ExpRest*
-    //         ->
-    // ExpRest -> , Exp
-    private LinkedList<Ast.Exp.T> parseExpList()
+    // error recovery: after a ParseError, drop what was half parsed and
+    // skip to a token the parser can go on from
+
+    private void reset()
     {
-        LinkedList<Ast.Exp.T> explist = new LinkedList<>();
-        if (current.kind == Kind.Rparen)
-            return explist;
-        Ast.Exp.T tem = parseExp();
-        tem.lineNum = current.lineNum;
-        explist.addLast(tem);
-        while (current.kind == Kind.Commer)
+        Arrays.fill(operands, 0, pending, null);
+        pending = 0;
+        open = 0;
+        openStms.clear();
+    }
+
+    // past the ; that ends the statement, or past the } of a block it
+    // opened, but not past the } of an enclosing block
+    private void skipStatement()
+    {
+        int depth = 0;
+        while (current != Kind.EOF && current != Kind.Class)
         {
+            if (current == Kind.Lbrace)
+                depth++;
+            else if (current == Kind.Rbrace)
+            {
+                if (depth == 0)
+                    return;
+                if (--depth == 0)
+                {
+                    advance();
+                    return;
+                }
+            } else if (current == Kind.Semi && depth == 0)
+            {
+                advance();
+                return;
+            }
             advance();
-            tem = parseExp();
-            tem.lineNum = current.lineNum;
-            explist.add(tem);
         }
-        return explist;
     }
 
-    // AtomExp -> (exp)
-    //  -> Integer Literal
+    // past the } that ends the method which started at brace depth
+    // depth. Only moves forward, so it works on a streamed source too
+    private void skipMethod(int depth)
+    {
+        if (braceDepth == depth) // the body is not open yet, find its {
+        {
+            while (current != Kind.Lbrace && current != Kind.Rbrace
+                    && current != Kind.Class && current != Kind.EOF)
+                advance();
+            if (current != Kind.Lbrace)
+                return;
+        }
+        while (current != Kind.Class && current != Kind.EOF)
+        {
+            advance();
+            if (braceDepth == depth)
+                return;
+        }
+    }
+
+    // to the next class
+    private void skipClass()
+    {
+        while (current != Kind.Class && current != Kind.EOF)
+            advance();
+    }
+
+    // parse methods
+
+    // binding power of each binary operator, 0 for every other kind.
+    // All of them are left associative
+    private static final int[] bindingPower = new int[Kind.values().length];
+
+    static
+    {
+        bindingPower[Kind.And.ordinal()] = 1;
+        bindingPower[Kind.LT.ordinal()] = 2;
+        bindingPower[Kind.Add.ordinal()] = 3;
+        bindingPower[Kind.Sub.ordinal()] = 3;
+        bindingPower[Kind.Times.ordinal()] = 4;
+    }
+
+    private void push(Kind operator, Ast.Exp.T operand)
+    {
+        if (pending == operators.length)
+        {
+            operators = Arrays.copyOf(operators, pending * 2);
+            operands = Arrays.copyOf(operands, pending * 2);
+        }
+        operators[pending] = operator;
+        operands[pending++] = operand;
+    }
+
+    private void pushOpen(Kind kind, Ast.Exp.T operand, int nots)
+    {
+        push(kind, operand);
+        if (open == openNots.length)
+            openNots = Arrays.copyOf(openNots, open * 2);
+        openNots[open++] = nots;
+    }
+
+    private static Ast.Exp.T binary(Kind op, Ast.Exp.T left, Ast.Exp.T right)
+    {
+        switch (op)
+        {
+            case And:
+                return new Ast.Exp.And(left, right, left.pos);
+            case LT:
+                return new Ast.Exp.LT(left, right, left.pos);
+            case Add:
+                return new Ast.Exp.Add(left, right, left.pos);
+            case Sub:
+                return right instanceof Ast.Exp.Num ? new Ast.Exp.Add(left,
+                        new Ast.Exp.Num(-((Ast.Exp.Num) right).num, right.pos), right.pos)
+                        : new Ast.Exp.Sub(left, right, left.pos);
+            default:
+                return new Ast.Exp.Times(left, right, right.pos);
+        }
+    }
+
+    // AtomExp -> Integer Literal
     //  -> true
     //  -> false
     //  -> this
@@ -117,39 +371,32 @@ public class Parser
     private Ast.Exp.T parseAtomExp()
     {
         Ast.Exp.T exp;
-        switch (current.kind)
+        switch (current)
         {
-            case Lparen:
-                advance();
-                exp = parseExp();
-                exp.lineNum = current.lineNum;
-                //advance();
-                eatToken(Kind.Rparen);
-                return exp;
             case NUM:
-                exp = new Ast.Exp.Num(Integer.parseInt(current.lexeme),
-                        current.lineNum);
+                exp = new Ast.Exp.Num(tokens.intValue(pos),
+                        currentPos());
                 advance();
                 return exp;
             case True:
-                exp = new Ast.Exp.True(current.lineNum);
+                exp = new Ast.Exp.True(currentPos());
                 advance();
                 return exp;
             case False:
-                exp = new Ast.Exp.False(current.lineNum);
+                exp = new Ast.Exp.False(currentPos());
                 advance();
                 return exp;
             case This:
-                exp = new Ast.Exp.This(current.lineNum);
+                exp = new Ast.Exp.This(currentPos());
                 advance();
                 return exp;
             case ID:
-                exp = new Ast.Exp.Id(current.lexeme, current.lineNum);
+                exp = new Ast.Exp.Id(lexeme(), nid(), currentPos());
                 advance();
                 return exp;
             case New:
                 advance();
-                exp = new Ast.Exp.NewObject(current.lexeme, current.lineNum);
+                exp = new Ast.Exp.NewObject(lexeme(), currentPos());
                 advance();
                 eatToken(Kind.Lparen);
                 eatToken(Kind.Rparen);
@@ -160,98 +407,99 @@ public class Parser
         }
     }
 
-    // NotExp -> AtomExp
-    //  -> AtomExp.id(expList)
-    private Ast.Exp.T parseNotExp()
+    // Exp -> Exp op Exp, by bindingPower
+    //  -> ! Exp, binding tighter than any op
+    //  -> Operand
+    // Operand -> AtomExp Call*
+    //  -> ( Exp ) Call*
+    // Call -> . id ( ExpList )
+    // ExpList -> Exp ExpRest*
+    //         ->
+    // ExpRest -> , Exp
+    private Ast.Exp.T parseExp()
     {
-        Ast.Exp.T exp = parseAtomExp();
-        while (current.kind == Kind.Dot)
+        operand:
+        while (true)
         {
-            advance();
-            Token id = current;
-            eatToken(Kind.ID);
-            eatToken(Kind.Lparen);
-            exp = new Ast.Exp.Call(exp, id.lexeme, parseExpList(), id.lineNum);
-            eatToken(Kind.Rparen);
-        }
-        return exp;
-    }
+            int nots = 0;
+            while (current == Kind.Not)
+            {
+                advance();
+                nots++;
+            }
+            if (current == Kind.Lparen)
+            {
+                advance();
+                pushOpen(Kind.Lparen, null, nots);
+                continue;
+            }
+            Ast.Exp.T exp = parseAtomExp();
 
-    // TimesExp -> ! TimesExp
-    //  -> NotExp
-    private Ast.Exp.T parseTimesExp()
-    {
-        int i = 0;
-        while (current.kind == Kind.Not)
-        {
-            advance();
-            i++;
-        }
-        Ast.Exp.T exp = parseNotExp();
-        Ast.Exp.T tem = new Ast.Exp.Not(exp, exp.lineNum);
-        return i % 2 == 0 ? exp : tem;
-    }
+            while (true)
+            {
+                if (current == Kind.Dot)
+                {
+                    advance();
+                    String id = lexeme();
+                    int idPos = currentPos(), nid = nid();
+                    eatToken(Kind.ID);
+                    eatToken(Kind.Lparen);
+                    exp = new Ast.Exp.Call(exp, id, new ArrayList<>(), nid, idPos);
+                    if (current != Kind.Rparen)
+                    {
+                        pushOpen(Kind.Dot, exp, nots);
+                        continue operand;
+                    }
+                    eatToken(Kind.Rparen);
+                    continue;
+                }
+                if (nots % 2 != 0)
+                    exp = new Ast.Exp.Not(exp, exp.pos);
 
-    // AddSubExp -> TimesExp * TimesExp
-    //  -> TimesExp
-    private Ast.Exp.T parseAddSubExp()
-    {
-        Ast.Exp.T tem = parseTimesExp();
-        Ast.Exp.T exp = tem;
-        while (current.kind == Kind.Times)
-        {
-            advance();
-            tem = parseTimesExp();
-            exp = new Ast.Exp.Times(exp, tem, tem.lineNum);
-        }
-        return exp;
-    }
+                // reduce the operators that bind at least as tight as the next,
+                // or all of them down to the innermost ( or argument list
+                int power = bindingPower[current.ordinal()];
+                int least = Math.max(power, 1);
+                while (pending > 0 && bindingPower[operators[pending - 1].ordinal()] >= least)
+                {
+                    pending--;
+                    exp = binary(operators[pending], operands[pending], exp);
+                    operands[pending] = null;
+                }
+                if (power > 0)
+                {
+                    push(current, exp);
+                    advance();
+                    continue operand;
+                }
 
-    // LtExp -> AddSubExp + AddSubExp
-    //  -> AddSubExp - AddSubExp
-    //  -> AddSubExp
-    private Ast.Exp.T parseLTExp()
-    {
-        Ast.Exp.T exp = parseAddSubExp();
-        while (current.kind == Kind.Add || current.kind == Kind.Sub)
-        {
-            boolean isAdd = current.kind == Kind.Add;
-            advance();
-            Ast.Exp.T tem = parseAddSubExp();
-            exp = isAdd ? new Ast.Exp.Add(exp, tem, exp.lineNum)
-                    : tem instanceof Ast.Exp.Num ? new Ast.Exp.Add(exp,
-                    new Ast.Exp.Num(-((Ast.Exp.Num) tem).num, tem.lineNum), tem.lineNum)
-                    : new Ast.Exp.Sub(exp, tem, exp.lineNum);
-        }
-        return exp;
-    }
-
-    // AndExp -> LtExp < LtExp
-    // -> LtExp
-    private Ast.Exp.T parseAndExp()
-    {
-        Ast.Exp.T exp = parseLTExp();
-        while (current.kind == Kind.LT)
-        {
-            advance();
-            Ast.Exp.T tem = parseLTExp();
-            exp = new Ast.Exp.LT(exp, tem, exp.lineNum);
+                // the innermost ( or argument list is complete
+                if (pending == 0)
+                    return exp;
+                exp.pos = currentPos();
+                if (operators[pending - 1] == Kind.Dot)
+                {
+                    Ast.Exp.Call call = (Ast.Exp.Call) operands[pending - 1];
+                    call.args.add(exp);
+                    if (current == Kind.Commer)
+                    {
+                        advance();
+                        continue operand;
+                    }
+                    exp = call;
+                }
+                operands[--pending] = null;
+                nots = openNots[--open];
+                eatToken(Kind.Rparen);
+            }
         }
-        return exp;
     }
 
-    // Exp -> AndExp && AndExp
-    //  -> AndExp
-    private Ast.Exp.T parseExp()
+    private boolean startsStatement()
     {
-        Ast.Exp.T exp = parseAndExp();
-        while (current.kind == Kind.And)
-        {
-            advance();
-            Ast.Exp.T tem = parseAndExp();
-            exp = new Ast.Exp.And(exp, tem, exp.lineNum);
-        }
-        return exp;
+        return current == Kind.Lbrace || current == Kind.If
+                || current == Kind.While || current == Kind.ID
+                || current == Kind.Print;
     }
 
     // Statement -> { Statement* }
@@ -259,68 +507,140 @@ public class Parser
     //  -> while (Exp) Statement
     //  -> print(Exp);
     //  -> id = Exp;
+    // a block, if or while is pushed on openStms when it is opened and
+    // completed by the statements after it, so nesting needs no recursion.
+    // After a syntax error the statement is skipped and parsing goes on
+    // in the innermost open block; null if no block was open
     private Ast.Stm.T parseStatement()
     {
-        Ast.Stm.T stm = null;
-        if (current.kind == Kind.Lbrace)
-        {
-            eatToken(Kind.Lbrace);
-            int lineNum = current.lineNum;
-            stm = new Ast.Stm.Block(parseStatements(), lineNum);
-            eatToken(Kind.Rbrace);
-        } else if (current.kind == Kind.If)
-        {
-            int lineNum = current.lineNum;
-            eatToken(Kind.If);
-            eatToken(Kind.Lparen);
-            Ast.Exp.T condition = parseExp();
-            eatToken(Kind.Rparen);
-            Ast.Stm.T then_stm = parseStatement();
-            eatToken(Kind.Else);
-            Ast.Stm.T else_stm = parseStatement();
-            stm = new Ast.Stm.If(condition, then_stm, else_stm, lineNum);
-        } else if (current.kind == Kind.While)
-        {
-            int lineNum = current.lineNum;
-            eatToken(Kind.While);
-            eatToken(Kind.Lparen);
-            Ast.Exp.T condition = parseExp();
-            eatToken(Kind.Rparen);
-            Ast.Stm.T body = parseStatement();
-            stm = new Ast.Stm.While(condition, body, lineNum);
-        } else if (current.kind == Kind.Print)
-        {
-            int lineNum = current.lineNum;
-            eatToken(Kind.Print);
-            eatToken(Kind.Lparen);
-            Ast.Exp.T exp = parseExp();
-            eatToken(Kind.Rparen);
-            eatToken(Kind.Semi);
-            stm = new Ast.Stm.Print(exp, lineNum);
-        } else if (current.kind == Kind.ID)
-        {
-            String id = current.lexeme;
-            int lineNum = current.lineNum;
-            eatToken(Kind.ID);
-            eatToken(Kind.Assign);
-            Ast.Exp.T exp = parseExp();
-            eatToken(Kind.Semi);
-            stm = new Ast.Stm.Assign(id, exp, lineNum);
-        } else
-            error();
+        boolean resume = false;
+        while (true)
+        {
+            try
+            {
+                return parseStatementTree(resume);
+            } catch (ParseError e)
+            {
+                if (failFast)
+                    throw e;
+                int block = openStms.size() - 1;
+                while (block >= 0 && !(openStms.get(block) instanceof Ast.Stm.Block))
+                    block--;
+                Arrays.fill(operands, 0, pending, null);
+                pending = 0;
+                open = 0;
+                openStms.subList(block + 1, openStms.size()).clear();
+                skipStatement();
+                if (block < 0 || current == Kind.Class || current == Kind.EOF)
+                {
+                    openStms.clear();
+                    return null;
+                }
+                resume = true;
+            }
+        }
+    }
 
-        return stm;
+    // resume: go on with the statements of the innermost open block
+    private Ast.Stm.T parseStatementTree(boolean resume)
+    {
+        statement:
+        while (true)
+        {
+            Ast.Stm.T stm = null;
+            if (resume)
+                resume = false;
+            else if (current == Kind.Lbrace)
+            {
+                eatToken(Kind.Lbrace);
+                int start = currentPos();
+                if (startsStatement())
+                {
+                    openStms.add(new Ast.Stm.Block(new ArrayList<>(), start));
+                    continue;
+                }
+                stm = new Ast.Stm.Block(new ArrayList<>(), start);
+                openStms.add(stm); // to be skipped on an error
+                eatToken(Kind.Rbrace);
+                openStms.remove(openStms.size() - 1);
+            } else if (current == Kind.If)
+            {
+                int start = currentPos();
+                eatToken(Kind.If);
+                eatToken(Kind.Lparen);
+                Ast.Exp.T condition = parseExp();
+                eatToken(Kind.Rparen);
+                openStms.add(new Ast.Stm.If(condition, null, null, start));
+                continue;
+            } else if (current == Kind.While)
+            {
+                int start = currentPos();
+                eatToken(Kind.While);
+                eatToken(Kind.Lparen);
+                Ast.Exp.T condition = parseExp();
+                eatToken(Kind.Rparen);
+                openStms.add(new Ast.Stm.While(condition, null, start));
+                continue;
+            } else if (current == Kind.Print)
+            {
+                int start = currentPos();
+                eatToken(Kind.Print);
+                eatToken(Kind.Lparen);
+                Ast.Exp.T exp = parseExp();
+                eatToken(Kind.Rparen);
+                eatToken(Kind.Semi);
+                stm = new Ast.Stm.Print(exp, start);
+            } else if (current == Kind.ID)
+            {
+                String id = lexeme();
+                int start = currentPos(), nid = nid();
+                eatToken(Kind.ID);
+                eatToken(Kind.Assign);
+                Ast.Exp.T exp = parseExp();
+                eatToken(Kind.Semi);
+                stm = new Ast.Stm.Assign(id, exp, nid, start);
+            } else
+                error();
+
+            // stm is complete, put it in the statement it is part of
+            while (!openStms.isEmpty())
+            {
+                Ast.Stm.T outer = openStms.get(openStms.size() - 1);
+                if (outer instanceof Ast.Stm.Block)
+                {
+                    if (stm != null)
+                        ((Ast.Stm.Block) outer).stms.add(stm);
+                    if (startsStatement())
+                        continue statement;
+                    eatToken(Kind.Rbrace);
+                } else if (outer instanceof Ast.Stm.If
+                        && ((Ast.Stm.If) outer).then_stm == null)
+                {
+                    ((Ast.Stm.If) outer).then_stm = stm;
+                    eatToken(Kind.Else);
+                    continue statement;
+                } else if (outer instanceof Ast.Stm.If)
+                    ((Ast.Stm.If) outer).else_stm = stm;
+                else
+                    ((Ast.Stm.While) outer).body = stm;
+                openStms.remove(openStms.size() - 1);
+                stm = outer;
+            }
+            return stm;
+        }
     }
 
     // Statements -> Statement Statements
     //  ->
-    private LinkedList<Ast.Stm.T> parseStatements()
+    private ArrayList<Ast.Stm.T> parseStatements()
     {
-        LinkedList<Ast.Stm.T> stms = new LinkedList<>();
-        while (current.kind == Kind.Lbrace || current.kind == Kind.If
-                || current.kind == Kind.While || current.kind == Kind.ID
-                || current.kind == Kind.Print)
-            stms.addLast(parseStatement());
+        ArrayList<Ast.Stm.T> stms = new ArrayList<>();
+        while (startsStatement())
+        {
+            Ast.Stm.T stm = parseStatement();
+            if (stm != null)
+                stms.add(stm);
+        }
 
         return stms;
     }
@@ -331,17 +651,17 @@ public class Parser
     private Ast.Type.T parseType()
     {
         Ast.Type.T type = null;
-        if (current.kind == Kind.Boolean)
+        if (current == Kind.Boolean)
         {
             type = new Ast.Type.Boolean();
             advance();
-        } else if (current.kind == Kind.Int)
+        } else if (current == Kind.Int)
         {
             type = new Ast.Type.Int();
             advance();
-        } else if (current.kind == Kind.ID)
+        } else if (current == Kind.ID)
         {
-            type = new Ast.Type.ClassType(current.lexeme);
+            type = new Ast.Type.ClassType(lexeme());
             advance();
         } else
             error();
@@ -349,54 +669,47 @@ public class Parser
     }
 
     // VarDecl -> Type id;
+    // a type is one token, so the two after it tell a declaration
+    // from an assignment or a method, before anything is consumed
     private Ast.Dec.T parseVarDecl()
     {
-        this.mark();
-        Ast.Type.T type = parseType();
-        if (current.kind == Kind.Assign)  // maybe a assign statement in method
+        if (peek(1) == Kind.Assign  // maybe a assign statement in method
+                || peek(1) == Kind.ID && peek(2) == Kind.Lparen) // maybe a method in class
         {
-            this.reset();
             isValDecl = false;
             return null;
-        } else if (current.kind == Kind.ID)
+        }
+
+        Ast.Type.T type = parseType();
+        if (current != Kind.ID)
         {
-            String id = current.lexeme;
-            advance();
-            if (current.kind == Kind.Semi)
-            {
-                this.unMark();
-                isValDecl = true;
-                Ast.Dec.T dec = new Ast.Dec.DecSingle(type, id, current.lineNum);
-                eatToken(Kind.Semi);
-                return dec;
-            } else if (current.kind == Kind.Lparen) // maybe a method in class
-            {
-                isValDecl = false;
-                this.reset();
-                return null;
-            } else
-            {
-                error();
-                return null;
-            }
-        } else
+            error();
+            return null;
+        }
+        String id = lexeme();
+        advance();
+        if (current != Kind.Semi)
         {
             error();
             return null;
         }
+        isValDecl = true;
+        Ast.Dec.T dec = new Ast.Dec.DecSingle(type, id, currentPos());
+        eatToken(Kind.Semi);
+        return dec;
     }
 
     // VarDecls -> VarDecl VarDecls
     //  ->
-    private LinkedList<Ast.Dec.T> parseVarDecls()
+    private ArrayList<Ast.Dec.T> parseVarDecls()
     {
-        LinkedList<Ast.Dec.T> decs = new LinkedList<>();
+        ArrayList<Ast.Dec.T> decs = new ArrayList<>();
         isValDecl = true;
-        while (current.kind == Kind.Int || current.kind == Kind.Boolean
-                || current.kind == Kind.ID)
+        while (current == Kind.Int || current == Kind.Boolean
+                || current == Kind.ID)
         {
             Ast.Dec.T dec = parseVarDecl();
-            if (dec != null) decs.addLast(dec);
+            if (dec != null) decs.add(dec);
             if (!isValDecl) break;
         }
         return decs;
@@ -405,18 +718,18 @@ public class Parser
     // FormalList -> Type id FormalRest*
     //  ->
     // FormalRest -> , Type id
-    private LinkedList<Ast.Dec.T> parseFormalList()
+    private ArrayList<Ast.Dec.T> parseFormalList()
     {
-        LinkedList<Ast.Dec.T> decs = new LinkedList<>();
-        if (current.kind == Kind.Int || current.kind == Kind.Boolean
-                || current.kind == Kind.ID)
+        ArrayList<Ast.Dec.T> decs = new ArrayList<>();
+        if (current == Kind.Int || current == Kind.Boolean
+                || current == Kind.ID)
         {
-            decs.addLast(new Ast.Dec.DecSingle(parseType(), current.lexeme, current.lineNum));
+            decs.add(new Ast.Dec.DecSingle(parseType(), lexeme(), currentPos()));
             eatToken(Kind.ID);
-            while (current.kind == Kind.Commer)
+            while (current == Kind.Commer)
             {
                 advance();
-                decs.addLast(new Ast.Dec.DecSingle(parseType(), current.lexeme, current.lineNum));
+                decs.add(new Ast.Dec.DecSingle(parseType(), lexeme(), currentPos()));
                 eatToken(Kind.ID);
             }
         }
@@ -425,70 +738,227 @@ public class Parser
 
     // Method -> Type id (FormalList)
     //          {VarDec* Statement* return Exp; }
-    private Ast.Method.T parseMethod()
+    private Ast.Method.MethodSingle parseMethod()
     {
+        int first = currentPos();
         Ast.Type.T retType = parseType();
-        String id = current.lexeme;
+        String id = lexeme();
         eatToken(Kind.ID);
         eatToken(Kind.Lparen);
-        LinkedList<Ast.Dec.T> formalList = parseFormalList();
+        ArrayList<Ast.Dec.T> formalList = parseFormalList();
         eatToken(Kind.Rparen);
         eatToken(Kind.Lbrace);
-        LinkedList<Ast.Dec.T> varDecs = parseVarDecls();
-        LinkedList<Ast.Stm.T> stms = parseStatements();
+        Ast.Method.MethodSingle method = new Ast.Method.MethodSingle(retType, id,
+                formalList, null, null, null);
+
+        int end = lazyBodies ? closingBrace() : -1;
+        if (end < 0)
+            parseMethodBody(method);
+        else
+        {
+            final int start = pos;
+            method.lazyBody = m -> parseLazyBody(m, start);
+            pos = end;
+            current = tokens.kind(pos);
+            braceDepth--; // the } of the body, but not its {, is skipped
+        }
+        method.start = first;
+        method.end = tokens.pos(pos - 1) + 1;
+        return method;
+    }
+
+    // {VarDec* Statement* return Exp; }, from after the {
+    private void parseMethodBody(Ast.Method.MethodSingle method)
+    {
+        method.locals = parseVarDecls();
+        method.stms = parseStatements();
         eatToken(Kind.Return);
-        Ast.Exp.T retExp = parseExp();
+        method.retExp = parseExp();
         eatToken(Kind.Semi);
         eatToken(Kind.Rbrace);
+    }
 
-        return new Ast.Method.MethodSingle(retType, id, formalList, varDecs, stms, retExp);
+    // the body of a method left for later, starting at token start. Its
+    // syntax errors go with those of the whole program
+    private void parseLazyBody(Ast.Method.MethodSingle method, int start)
+    {
+        Parser body = new Parser(tokens, start);
+        body.diagnostics = diagnostics;
+        try
+        {
+            body.parseMethodBody(method);
+        } catch (ParseError e)
+        {
+            // leave a body later phases can still walk
+            if (method.locals == null)
+                method.locals = new ArrayList<>();
+            if (method.stms == null)
+                method.stms = new ArrayList<>();
+            if (method.retExp == null)
+                method.retExp = new Ast.Exp.Num(0, tokens.pos(start));
+        }
+    }
+
+    // index of the token after the } that closes the current block, or -1
+    private int closingBrace()
+    {
+        int depth = 1;
+        for (int i = pos; i < tokens.size(); i++)
+        {
+            Kind kind = tokens.kind(i);
+            if (kind == Kind.Lbrace)
+                depth++;
+            else if (kind == Kind.Rbrace && --depth == 0)
+                return i + 1;
+        }
+        return -1;
     }
 
     // MethodDecls -> MethodDecl MethodDecls*
     //  ->
-    private LinkedList<Ast.Method.T> parseMethodDecls()
+    private ArrayList<Ast.Method.T> parseMethodDecls()
     {
-        LinkedList<Ast.Method.T> methods = new LinkedList<>();
-        while (current.kind == Kind.ID ||
-                current.kind == Kind.Int ||
-                current.kind == Kind.Boolean)
-            methods.addLast(parseMethod());
+        ArrayList<Ast.Method.T> methods = new ArrayList<>();
+        while (current == Kind.ID ||
+                current == Kind.Int ||
+                current == Kind.Boolean)
+        {
+            int depth = braceDepth;
+            Ast.Method.MethodSingle method;
+            try
+            {
+                method = parseMethod();
+            } catch (ParseError e)
+            {
+                if (failFast)
+                    throw e;
+                reset();
+                skipMethod(depth);
+                continue;
+            }
+            // a method can only be called as exp.id(...), so one whose name
+            // never follows a '.' is dead and its body is never parsed
+            if (!lazyBodies || called.contains(method.id))
+                methods.add(method);
+        }
 
         return methods;
     }
 
     // ClassDecl -> class id { VarDecl* MethodDecl* }
     //  -> class id : id { VarDecl* Method* }
-    private Ast.Class.T parseClassDecl()
+    private Ast.Class.ClassSingle parseClassDecl()
     {
+        int first = currentPos();
         eatToken(Kind.Class);
-        String id = current.lexeme;
+        String id = lexeme();
         eatToken(Kind.ID);
         String superClass = null;
-        if (current.kind == Kind.Colon)
+        if (current == Kind.Colon)
         {
             advance();
-            superClass = current.lexeme;
+            superClass = lexeme();
             eatToken(Kind.ID);
         }
         eatToken(Kind.Lbrace);
-        LinkedList<Ast.Dec.T> decs = parseVarDecls();
-        LinkedList<Ast.Method.T> methods = parseMethodDecls();
+        ArrayList<Ast.Dec.T> decs = parseVarDecls();
+        ArrayList<Ast.Method.T> methods = parseMethodDecls();
         eatToken(Kind.Rbrace);
-        return new Ast.Class.ClassSingle(id, superClass, decs, methods);
+        Ast.Class.ClassSingle c = new Ast.Class.ClassSingle(id, superClass, decs, methods);
+        c.start = first;
+        c.end = tokens.pos(pos - 1) + 1;
+        return c;
     }
 
     // ClassDecls -> ClassDecl ClassDecls*
     //  ->
-    private LinkedList<Ast.Class.T> parseClassDecls()
+    private ArrayList<Ast.Class.T> parseClassDecls()
     {
-        LinkedList<Ast.Class.T> classes = new LinkedList<>();
-        while (current.kind == Kind.Class)
-            classes.addLast(parseClassDecl());
+        ArrayList<Ast.Class.T> classes = new ArrayList<>();
+        while (current == Kind.Class)
+        {
+            try
+            {
+                classes.add(parseClassDecl());
+            } catch (ParseError e)
+            {
+                reset();
+                skipClass();
+            }
+        }
 
         return classes;
     }
 
+    // ClassDecls, but split into runs of classes of about the same number
+    // of tokens, found by matching braces, each parsed by its own Parser on
+    // the common pool. Null if the program is too small for that or any
+    // run fails; the classes are then parsed one by one, to report the
+    // first error just as always
+    private ArrayList<Ast.Class.T> parseClassDeclsInParallel()
+    {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        if (parallelism < 2 || tokens.isStreaming()
+                || tokens.size() - pos < minParallel)
+            return null;
+
+        int runSize = (tokens.size() - pos) / (parallelism * 4);
+        ArrayList<Callable<ArrayList<Ast.Class.T>>> tasks = new ArrayList<>();
+        int from = pos, end = pos;
+        while (tokens.kind(end) == Kind.Class)
+        {
+            while (tokens.kind(end) != Kind.Lbrace && tokens.kind(end) != Kind.EOF)
+                end++;
+            int depth = 0;
+            do
+            {
+                Kind kind = tokens.kind(end);
+                if (kind == Kind.EOF)
+                    return null;
+                if (kind == Kind.Lbrace)
+                    depth++;
+                else if (kind == Kind.Rbrace)
+                    depth--;
+                end++;
+            } while (depth > 0);
+
+            if (end - from >= runSize || tokens.kind(end) != Kind.Class)
+            {
+                final int start = from, stop = end;
+                tasks.add(() ->
+                {
+                    Parser part = new Parser(tokens, start);
+                    part.failFast = true;
+                    part.lazyBodies = lazyBodies;
+                    part.called = called;
+                    // a part fails fast and reports nothing itself, but its
+                    // lazy bodies are parsed later and report to this list
+                    part.diagnostics = diagnostics;
+                    ArrayList<Ast.Class.T> classes = new ArrayList<>();
+                    while (part.pos < stop)
+                        classes.add(part.parseClassDecl());
+                    if (part.pos != stop)
+                        throw new ParseError();
+                    return classes;
+                });
+                from = end;
+            }
+        }
+
+        ArrayList<Ast.Class.T> classes = new ArrayList<>();
+        try
+        {
+            for (Future<ArrayList<Ast.Class.T>> run : ForkJoinPool.commonPool().invokeAll(tasks))
+                classes.addAll(run.get());
+        } catch (InterruptedException | ExecutionException e)
+        {
+            return null;
+        }
+        pos = end;
+        current = tokens.kind(pos);
+        return classes;
+    }
+
     // MainClass -> class id
     //    {
     //        void main()
@@ -498,8 +968,9 @@ public class Parser
     //    }
     private Ast.MainClass.MainClassSingle parseMainClass()
     {
+        int first = currentPos();
         eatToken(Kind.Class);
-        String id = current.lexeme;
+        String id = lexeme();
         eatToken(Kind.ID);
         eatToken(Kind.Lbrace);
         eatToken(Kind.Void);
@@ -510,20 +981,116 @@ public class Parser
         Ast.Stm.T stm = parseStatement();
         eatToken(Kind.Rbrace);
         eatToken(Kind.Rbrace);
-        return new Ast.MainClass.MainClassSingle(id, stm);
+        Ast.MainClass.MainClassSingle main = new Ast.MainClass.MainClassSingle(id, stm);
+        main.start = first;
+        main.end = tokens.pos(pos - 1) + 1;
+        return main;
     }
 
     // Program -> MainClass ClassDecl*
     private Ast.Program.ProgramSingle parseProgram()
     {
-        Ast.MainClass.MainClassSingle main = parseMainClass();
-        LinkedList<Ast.Class.T> classes = parseClassDecls();
-        eatToken(Kind.EOF);
-        return new Ast.Program.ProgramSingle(main, classes);
+        Ast.MainClass.MainClassSingle main = null;
+        try
+        {
+            main = parseMainClass();
+        } catch (ParseError e)
+        {
+            reset();
+            skipClass();
+        }
+        ArrayList<Ast.Class.T> classes = parseClassDeclsInParallel();
+        if (classes == null)
+            classes = parseClassDecls();
+        try
+        {
+            eatToken(Kind.EOF);
+        } catch (ParseError e)
+        {
+            // nothing is left to parse
+        }
+        Ast.Program.ProgramSingle program = new Ast.Program.ProgramSingle(main, classes);
+        program.lines = tokens.lines();
+        program.nids = tokens.size();
+        return program;
     }
 
+    // parse the whole program, going on past syntax errors to find them
+    // all. The tree is only good to use when isOK()
     public Ast.Program.T parse()
     {
+        if (edit != null)
+            return parseEdit();
+        // lazy bodies are parsed from their tokens later, which a streamed
+        // source does not keep
+        if (tokens.isStreaming())
+            lazyBodies = false;
+        if (lazyBodies)
+        {
+            called = new HashSet<>();
+            for (int i = 1; i < tokens.size(); i++)
+                if (tokens.kind(i) == Kind.ID && tokens.kind(i - 1) == Kind.Dot)
+                    called.add(tokens.lexeme(i));
+        }
         return parseProgram();
     }
+
+    // parse the method or class an edit is in again, and splice it into the
+    // program parsed before, see edited()
+    private Ast.Program.T parseEdit()
+    {
+        Edit edit = this.edit;
+        this.edit = null;
+        Ast.MainClass.MainClassSingle main = null;
+        Ast.Class.ClassSingle c = null;
+        Ast.Method.MethodSingle method = null;
+        failFast = true;
+        try
+        {
+            if (edit.main != null)
+                main = parseMainClass();
+            else if (edit.method >= 0)
+                method = parseMethod();
+            else c = parseClassDecl();
+        } catch (ParseError e)
+        {
+            current = null;
+        }
+        failFast = false;
+
+        if (current != Kind.EOF)
+        {
+            // the edit reaches out of its method or class, or has errors,
+            // which a parse of the whole source finds just as always
+            tokens = TokenBuffer.lex(edit.source);
+            pos = 0;
+            current = tokens.kind(pos);
+            braceDepth = 0;
+            nids = 0;
+            reset();
+            return parse();
+        }
+
+        Ast.Program.ProgramSingle program = edit.program;
+        Shift shift = new Shift(edit.delta);
+        int next = 0; // the first class after the edit
+        if (main != null)
+            program.mainClass = main;
+        else
+        {
+            next = program.classes.indexOf(edit.c) + 1;
+            if (method != null)
+            {
+                edit.c.methods.set(edit.method, method);
+                for (int i = edit.method + 1; i < edit.c.methods.size(); i++)
+                    shift.visit(edit.c.methods.get(i));
+                edit.c.end += edit.delta;
+            } else program.classes.set(next - 1, c);
+        }
+        for (int i = next; i < program.classes.size(); i++)
+            shift.visit(program.classes.get(i));
+        program.lines = edit.lines;
+        program.nids = nids + tokens.size();
+        return program;
+    }
 }
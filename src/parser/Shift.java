@@ -0,0 +1,206 @@
+package parser;
+
+import ast.Ast;
+import ast.Ast.Dec;
+import ast.Ast.Exp;
+import ast.Ast.MainClass;
+import ast.Ast.Method;
+import ast.Ast.Program;
+import ast.Ast.Stm;
+import ast.Ast.Type;
+
+/**
+ * Moves the source offsets of all the nodes visited by delta, for the
+ * parts of a program that come after an edit, see Parser.edited.
+ */
+class Shift implements ast.Visitor
+{
+    private final int delta;
+
+    Shift(int delta)
+    {
+        this.delta = delta;
+    }
+
+    private void binary(Exp.T e, Exp.T left, Exp.T right)
+    {
+        e.pos += delta;
+        this.visit(left);
+        this.visit(right);
+    }
+
+    @Override
+    public void visit(Type.Boolean t)
+    {
+    }
+
+    @Override
+    public void visit(Type.ClassType t)
+    {
+    }
+
+    @Override
+    public void visit(Type.Int t)
+    {
+    }
+
+    @Override
+    public void visit(Dec.DecSingle d)
+    {
+        d.pos += delta;
+    }
+
+    @Override
+    public void visit(Exp.Add e)
+    {
+        binary(e, e.left, e.right);
+    }
+
+    @Override
+    public void visit(Exp.And e)
+    {
+        binary(e, e.left, e.right);
+    }
+
+    @Override
+    public void visit(Exp.Call e)
+    {
+        e.pos += delta;
+        this.visit(e.exp);
+        e.args.forEach(this::visit);
+    }
+
+    @Override
+    public void visit(Exp.False e)
+    {
+        e.pos += delta;
+    }
+
+    @Override
+    public void visit(Exp.Id e)
+    {
+        e.pos += delta;
+    }
+
+    @Override
+    public void visit(Exp.LT e)
+    {
+        binary(e, e.left, e.right);
+    }
+
+    @Override
+    public void visit(Exp.NewObject e)
+    {
+        e.pos += delta;
+    }
+
+    @Override
+    public void visit(Exp.Not e)
+    {
+        e.pos += delta;
+        this.visit(e.exp);
+    }
+
+    @Override
+    public void visit(Exp.Num e)
+    {
+        e.pos += delta;
+    }
+
+    @Override
+    public void visit(Exp.Sub e)
+    {
+        binary(e, e.left, e.right);
+    }
+
+    @Override
+    public void visit(Exp.This e)
+    {
+        e.pos += delta;
+    }
+
+    @Override
+    public void visit(Exp.Times e)
+    {
+        binary(e, e.left, e.right);
+    }
+
+    @Override
+    public void visit(Exp.True e)
+    {
+        e.pos += delta;
+    }
+
+    @Override
+    public void visit(Stm.Assign s)
+    {
+        s.pos += delta;
+        this.visit(s.exp);
+    }
+
+    @Override
+    public void visit(Stm.Block s)
+    {
+        s.pos += delta;
+        s.stms.forEach(this::visit);
+    }
+
+    @Override
+    public void visit(Stm.If s)
+    {
+        s.pos += delta;
+        this.visit(s.condition);
+        this.visit(s.then_stm);
+        this.visit(s.else_stm);
+    }
+
+    @Override
+    public void visit(Stm.Print s)
+    {
+        s.pos += delta;
+        this.visit(s.exp);
+    }
+
+    @Override
+    public void visit(Stm.While s)
+    {
+        s.pos += delta;
+        this.visit(s.condition);
+        this.visit(s.body);
+    }
+
+    @Override
+    public void visit(Method.MethodSingle m)
+    {
+        m.start += delta;
+        m.end += delta;
+        m.formals.forEach(this::visit);
+        m.locals.forEach(this::visit);
+        m.stms.forEach(this::visit);
+        this.visit(m.retExp);
+    }
+
+    @Override
+    public void visit(Ast.Class.ClassSingle c)
+    {
+        c.start += delta;
+        c.end += delta;
+        c.fields.forEach(this::visit);
+        c.methods.forEach(this::visit);
+    }
+
+    @Override
+    public void visit(MainClass.MainClassSingle c)
+    {
+        c.start += delta;
+        c.end += delta;
+        this.visit(c.stm);
+    }
+
+    @Override
+    public void visit(Program.ProgramSingle p)
+    {
+        this.visit(p.mainClass);
+        p.classes.forEach(this::visit);
+    }
+}
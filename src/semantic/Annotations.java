@@ -0,0 +1,114 @@
+package semantic;
+
+import ast.Ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * What the checker found out about the nodes of a program that the code
+ * generator needs, kept in tables instead of in the nodes: the type of each
+ * id and whether it is a field, the type assigned by each assignment, and
+ * the class, return and argument types of each call. The tables are indexed
+ * by the nid the parser gave each of these nodes, and types are numbered
+ * too, so they are arrays of ints, and the checker leaves the nodes as
+ * parsed. They go once the program is translated.
+ */
+public class Annotations
+{
+    // by node: the type of an id or assignment, and for a call where its
+    // class, return and argument types start in signatures
+    private int[] types = new int[256];
+    private final BitSet fields = new BitSet(); // the ids that are fields
+    private int[] signatures = new int[256];
+    private int signaturesSize;
+
+    private final ArrayList<Ast.Type.T> typeList = new ArrayList<>();
+    private final HashMap<String, Integer> typeIds = new HashMap<>();
+
+    private int typeId(Ast.Type.T t)
+    {
+        // the types made up for errors would clash with a class "unknown"
+        String key = t instanceof Ast.Type.ClassType
+                || t instanceof Ast.Type.Int
+                || t instanceof Ast.Type.Boolean ? t.toString() : "@" + t;
+        Integer id = this.typeIds.get(key);
+        if (id == null)
+        {
+            id = this.typeList.size();
+            this.typeList.add(t);
+            this.typeIds.put(key, id);
+        }
+        return id;
+    }
+
+    private void node(int nid, int type)
+    {
+        if (nid >= this.types.length)
+            this.types = Arrays.copyOf(this.types, Math.max(nid + 1, this.types.length * 2));
+        this.types[nid] = type;
+    }
+
+    private void signature(int type)
+    {
+        if (this.signaturesSize == this.signatures.length)
+            this.signatures = Arrays.copyOf(this.signatures, this.signaturesSize * 2);
+        this.signatures[this.signaturesSize++] = type;
+    }
+
+    void put(Ast.Exp.Id e, Ast.Type.T type, boolean isField)
+    {
+        node(e.nid, typeId(type));
+        if (isField)
+            this.fields.set(e.nid);
+    }
+
+    void put(Ast.Stm.Assign s, Ast.Type.T type)
+    {
+        node(s.nid, typeId(type));
+    }
+
+    void put(Ast.Exp.Call e, Ast.Type.ClassType c, Ast.Type.T rt,
+             ArrayList<Ast.Type.T> at)
+    {
+        node(e.nid, this.signaturesSize);
+        signature(typeId(c));
+        signature(typeId(rt));
+        at.forEach(a -> signature(typeId(a)));
+    }
+
+    public Ast.Type.T type(Ast.Exp.Id e)
+    {
+        return this.typeList.get(this.types[e.nid]);
+    }
+
+    public boolean isField(Ast.Exp.Id e)
+    {
+        return this.fields.get(e.nid);
+    }
+
+    // of the expression assigned
+    public Ast.Type.T type(Ast.Stm.Assign s)
+    {
+        return this.typeList.get(this.types[s.nid]);
+    }
+
+    // the class of the object called
+    public String classOf(Ast.Exp.Call e)
+    {
+        return this.typeList.get(this.signatures[this.types[e.nid]]).toString();
+    }
+
+    public Ast.Type.T returnType(Ast.Exp.Call e)
+    {
+        return this.typeList.get(this.signatures[this.types[e.nid] + 1]);
+    }
+
+    // of argument i, one for each of e.args
+    public Ast.Type.T argType(Ast.Exp.Call e, int i)
+    {
+        return this.typeList.get(this.signatures[this.types[e.nid] + 2 + i]);
+    }
+}
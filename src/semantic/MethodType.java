@@ -2,7 +2,7 @@ package semantic;
 
 import ast.Ast;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 
 /**
  * Created by Mengxu on 2017/1/13.
@@ -10,9 +10,9 @@ import java.util.LinkedList;
 public class MethodType
 {
     public Ast.Type.T retType;
-    public LinkedList<Ast.Dec.T> argsType;
+    public ArrayList<Ast.Dec.T> argsType;
 
-    public MethodType(Ast.Type.T retType, LinkedList<Ast.Dec.T> decs)
+    public MethodType(Ast.Type.T retType, ArrayList<Ast.Dec.T> decs)
     {
         this.retType = retType;
         this.argsType = decs;
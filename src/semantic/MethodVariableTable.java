@@ -1,9 +1,10 @@
 package semantic;
 
 import ast.Ast;
+import lexer.LineMap;
 
+import java.util.ArrayList;
 import java.util.Hashtable;
-import java.util.LinkedList;
 
 /**
  * Created by Mengxu on 2017/1/13.
@@ -17,7 +18,8 @@ public class MethodVariableTable
         this.table = new Hashtable<>();
     }
 
-    public void put(LinkedList<Ast.Dec.T> formals, LinkedList<Ast.Dec.T> locals)
+    public void put(ArrayList<Ast.Dec.T> formals, ArrayList<Ast.Dec.T> locals,
+                    LineMap lines)
     {
         for (Ast.Dec.T dec : formals)
         {
@@ -25,7 +27,7 @@ public class MethodVariableTable
             if (this.table.get(decc.id) != null)
             {
                 System.out.println("duplicated parameter: " + decc.id +
-                        " at line " + decc.lineNum);
+                        " at line " + lines.position(decc.pos));
                 System.exit(1);
             } else this.table.put(decc.id, decc.type);
         }
@@ -36,7 +38,7 @@ public class MethodVariableTable
             if (this.table.get(decc.id) != null)
             {
                 System.out.println("duplicated variable: " + decc.id +
-                        " at line " + decc.lineNum);
+                        " at line " + lines.position(decc.pos));
                 System.exit(1);
             } else this.table.put(decc.id, decc.type);
         }
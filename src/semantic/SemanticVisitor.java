@@ -1,9 +1,10 @@
 package semantic;
 
 import ast.Ast;
+import lexer.LineMap;
 
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.LinkedList;
 
 
 /**
@@ -17,6 +18,9 @@ public class SemanticVisitor implements ast.Visitor
     private Ast.Type.T type;
     private boolean isOk; // the ast is correct?
     private HashSet<String> curMthLocals; //current method locals
+    private LineMap lines; // of the program being checked
+    private boolean isField; // the id last looked up is a field?
+    private final Annotations annotations; // what the code generator needs
 
     public SemanticVisitor()
     {
@@ -25,6 +29,7 @@ public class SemanticVisitor implements ast.Visitor
         this.currentClass = null;
         this.type = null;
         this.isOk = true;
+        this.annotations = new Annotations();
     }
 
     public boolean isOK()
@@ -32,10 +37,15 @@ public class SemanticVisitor implements ast.Visitor
         return this.isOk;
     }
 
-    private void error(int lineNum, String msg)
+    public Annotations annotations()
+    {
+        return this.annotations;
+    }
+
+    private void error(int pos, String msg)
     {
         this.isOk = false;
-        System.out.println("Error: Line " + lineNum + " " + msg);
+        System.out.println("Error: Line " + this.lines.position(pos) + " " + msg);
     }
 
     private boolean isMatch(Ast.Type.T target, Ast.Type.T cur)
@@ -78,11 +88,11 @@ public class SemanticVisitor implements ast.Visitor
         Ast.Type.T lefty = this.type;
         this.visit(e.right);
         if (!this.type.toString().equals(lefty.toString()))
-            error(e.lineNum, "add expression" +
+            error(e.pos, "add expression" +
                     " the type of left is " + lefty.toString() +
                     ", but the type of right is " + this.type.toString());
         else if (!new Ast.Type.Int().toString().equals(this.type.toString()))
-            error(e.lineNum, " only integer numbers can be added.");
+            error(e.pos, " only integer numbers can be added.");
 
         this.type = new Ast.Type.Int();
     }
@@ -94,11 +104,11 @@ public class SemanticVisitor implements ast.Visitor
         Ast.Type.T lefty = this.type;
         this.visit(e.right);
         if (!this.type.toString().equals(lefty.toString()))
-            error(e.lineNum, "and expression" +
+            error(e.pos, "and expression" +
                     " the type of left is " + lefty.toString() +
                     ", but the type of right is " + this.type.toString());
         else if (!new Ast.Type.Boolean().toString().equals(this.type.toString()))
-            error(e.lineNum, " only integer numbers can be added.");
+            error(e.pos, " only integer numbers can be added.");
 
         this.type = new Ast.Type.Boolean();
     }
@@ -112,10 +122,9 @@ public class SemanticVisitor implements ast.Visitor
         if (this.type instanceof Ast.Type.ClassType)
         {
             expType = ((Ast.Type.ClassType) this.type);
-            e.type = expType.id;
         } else
         {
-            error(e.lineNum, "only an instance of class can be invoked.");
+            error(e.pos, "only an instance of class can be invoked.");
             this.type = new Ast.Type.T()
             {
                 @Override
@@ -127,20 +136,19 @@ public class SemanticVisitor implements ast.Visitor
             return;
         }
 
-        LinkedList<Ast.Type.T> argsty = new LinkedList<>();
+        ArrayList<Ast.Type.T> argsty = new ArrayList<>();
         e.args.forEach(arg ->
         {
             this.visit(arg);
-            argsty.addLast(this.type);
+            argsty.add(this.type);
         });
 
         MethodType mty = this.classTable.getMethodType(expType.id, e.id);
 
         if (mty == null)
         {
-            error(e.lineNum, "the method you are calling haven't been defined.");
-            e.at = argsty;
-            e.rt = new Ast.Type.T()
+            error(e.pos, "the method you are calling haven't been defined.");
+            this.type = new Ast.Type.T()
             {
                 @Override
                 public String toString()
@@ -148,22 +156,21 @@ public class SemanticVisitor implements ast.Visitor
                     return "unknown";
                 }
             };
-            this.type = e.rt;
+            this.annotations.put(e, expType, this.type, argsty);
             return;
         }
 
         if (mty.argsType.size() != argsty.size())
-            error(e.lineNum, "the count of arguments is not match.");
+            error(e.pos, "the count of arguments is not match.");
 
         for (int i = 0; i < mty.argsType.size(); i++)
             if (!isMatch(((Ast.Dec.DecSingle) mty.argsType.get(i)).type, argsty.get(i)))
-                error(e.args.get(i).lineNum, "the parameter " + (i + 1) +
+                error(e.args.get(i).pos, "the parameter " + (i + 1) +
                         " needs a " + ((Ast.Dec.DecSingle) mty.argsType.get(i)).type.toString() +
                         ", but got a " + argsty.get(i).toString());
 
 
-        e.at = argsty;
-        e.rt = mty.retType;
+        this.annotations.put(e, expType, mty.retType, argsty);
         this.type = mty.retType;
     }
 
@@ -173,25 +180,27 @@ public class SemanticVisitor implements ast.Visitor
         this.type = new Ast.Type.Boolean();
     }
 
-    @Override
-    public void visit(Ast.Exp.Id e)
+    // the type of the variable id used at pos, and whether it is a field
+    // in isField
+    private Ast.Type.T idType(String id, int pos)
     {
-        Ast.Type.T type = this.methodVarTable.get(e.id);
+        Ast.Type.T type = this.methodVarTable.get(id);
         boolean isField = type == null;
         String className = currentClass;
         while (type == null && className != null)
         {
-            type = this.classTable.getFieldType(className, e.id);
+            type = this.classTable.getFieldType(className, id);
             className = this.classTable.getClassBinding(className).base;
         }
 
-        if (this.curMthLocals.contains(e.id))
-            error(e.lineNum, "you should assign \"" + e.id + "\" a value before use it.");
+        if (this.curMthLocals.contains(id))
+            error(pos, "you should assign \"" + id + "\" a value before use it.");
 
         if (type == null)
         {
-            error(e.lineNum, "you should declare \"" + e.id + "\" before use it.");
-            e.type = new Ast.Type.T()
+            error(pos, "you should declare \"" + id + "\" before use it.");
+            this.isField = false;
+            return new Ast.Type.T()
             {
                 @Override
                 public String toString()
@@ -199,13 +208,16 @@ public class SemanticVisitor implements ast.Visitor
                     return "unknown";
                 }
             };
-            this.type = e.type;
-        } else
-        {
-            e.isField = isField;
-            e.type = type;
-            this.type = type;
         }
+        this.isField = isField;
+        return type;
+    }
+
+    @Override
+    public void visit(Ast.Exp.Id e)
+    {
+        this.type = idType(e.id, e.pos);
+        this.annotations.put(e, this.type, this.isField);
     }
 
     @Override
@@ -216,11 +228,11 @@ public class SemanticVisitor implements ast.Visitor
         this.visit(e.right);
         if (!this.type.toString().equals(lefty.toString()))
         {
-            error(e.lineNum, "compare expression" +
+            error(e.pos, "compare expression" +
                     " the type of left is " + lefty.toString() +
                     ", but the type of right is " + this.type.toString());
         } else if (!new Ast.Type.Int().toString().equals(this.type.toString()))
-            error(e.lineNum, "only integer numbers can be compared.");
+            error(e.pos, "only integer numbers can be compared.");
 
         this.type = new Ast.Type.Boolean();
     }
@@ -232,7 +244,7 @@ public class SemanticVisitor implements ast.Visitor
             this.type = new Ast.Type.ClassType(e.id);
         else
         {
-            error(e.lineNum, "cannot find the declaration of class \"" + e.id + "\".");
+            error(e.pos, "cannot find the declaration of class \"" + e.id + "\".");
             this.type = new Ast.Type.T()
             {
                 @Override
@@ -249,7 +261,7 @@ public class SemanticVisitor implements ast.Visitor
     {
         this.visit(e.exp);
         if (!this.type.toString().equals(new Ast.Type.Boolean().toString()))
-            error(e.lineNum, "the exp cannot calculate to a boolean.");
+            error(e.pos, "the exp cannot calculate to a boolean.");
 
         this.type = new Ast.Type.Boolean();
     }
@@ -267,12 +279,12 @@ public class SemanticVisitor implements ast.Visitor
         Ast.Type.T lefty = this.type;
         this.visit(e.right);
         if (!this.type.toString().equals(lefty.toString()))
-            error(e.lineNum, "sub expression" +
+            error(e.pos, "sub expression" +
                     " the type of left is " + lefty.toString() +
                     ", but the type of right is " + this.type.toString());
         else if (!new Ast.Type.Int().toString().equals(this.type.toString()))
 
-            error(e.lineNum, " only integer numbers can be subbed.");
+            error(e.pos, " only integer numbers can be subbed.");
 
         this.type = new Ast.Type.Int();
     }
@@ -290,11 +302,11 @@ public class SemanticVisitor implements ast.Visitor
         Ast.Type.T lefty = this.type;
         this.visit(e.right);
         if (!this.type.toString().equals(lefty.toString()))
-            error(e.lineNum, "times expression" +
+            error(e.pos, "times expression" +
                     " the type of left is " + lefty.toString() +
                     ", but the type of right is " + this.type.toString());
         else if (!new Ast.Type.Int().toString().equals(this.type.toString()))
-            error(e.lineNum, "only integer numbers can be timed.");
+            error(e.pos, "only integer numbers can be timed.");
 
         this.type = new Ast.Type.Int();
     }
@@ -309,18 +321,18 @@ public class SemanticVisitor implements ast.Visitor
     public void visit(Ast.Stm.Assign s)
     {
         this.visit(s.exp);
-        s.type = this.type;
+        Ast.Type.T expty = this.type;
+        this.annotations.put(s, expty);
 
         if (this.curMthLocals.contains(s.id))
             this.curMthLocals.remove(s.id);
 
-        Ast.Exp.Id id = new Ast.Exp.Id(s.id, s.lineNum);
-        this.visit(id);
-        Ast.Type.T idty = this.type;
+        Ast.Type.T idty = idType(s.id, s.pos);
+        this.type = idty;
         //if (!this.type.toString().equals(idty.toString()))
-        if (!isMatch(idty, s.type))
-            error(s.lineNum, "the type of \"" + s.id + "\" is " + idty.toString() +
-                    ", but the type of expression is " + s.type.toString() +
+        if (!isMatch(idty, expty))
+            error(s.pos, "the type of \"" + s.id + "\" is " + idty.toString() +
+                    ", but the type of expression is " + expty.toString() +
                     ". Assign failed.");
 
     }
@@ -336,7 +348,7 @@ public class SemanticVisitor implements ast.Visitor
     {
         this.visit(s.condition);
         if (!this.type.toString().equals(new Ast.Type.Boolean().toString()))
-            error(s.condition.lineNum,
+            error(s.condition.pos,
                     "the condition's type should be a boolean.");
 
         this.visit(s.then_stm);
@@ -348,7 +360,7 @@ public class SemanticVisitor implements ast.Visitor
     {
         this.visit(s.exp);
         if (!this.type.toString().equals(new Ast.Type.Int().toString()))
-            error(s.exp.lineNum,
+            error(s.exp.pos,
                     "the expression in \"print()\" must be a integer " +
                             "or can be calculate to an integer.");
     }
@@ -358,7 +370,7 @@ public class SemanticVisitor implements ast.Visitor
     {
         this.visit(s.condition);
         if (!this.type.toString().equals(new Ast.Type.Boolean().toString()))
-            error(s.condition.lineNum, "the condition's type should be a boolean.");
+            error(s.condition.pos, "the condition's type should be a boolean.");
 
         this.visit(s.body);
     }
@@ -367,14 +379,14 @@ public class SemanticVisitor implements ast.Visitor
     public void visit(Ast.Method.MethodSingle m)
     {
         this.methodVarTable = new MethodVariableTable();
-        this.methodVarTable.put(m.formals, m.locals);
+        this.methodVarTable.put(m.formals, m.locals, this.lines);
         this.curMthLocals = new HashSet<>();
         m.locals.forEach(local -> this.curMthLocals.add(((Ast.Dec.DecSingle) local).id));
         m.stms.forEach(this::visit);
         this.visit(m.retExp);
         // if (!this.type.toString().equals(m.retType.toString()))
         if (!isMatch(m.retType, this.type))
-            error(m.retExp.lineNum,
+            error(m.retExp.pos,
                     "the return expression's type is not match the method \"" +
                             m.id + "\" declared.");
 
@@ -397,6 +409,8 @@ public class SemanticVisitor implements ast.Visitor
     @Override
     public void visit(Ast.Program.ProgramSingle p)
     {
+        this.lines = p.lines;
+
         // put main class to class table
         this.classTable.putClassBinding(((Ast.MainClass.MainClassSingle) p.mainClass).id,
                 new ClassBinding(null));
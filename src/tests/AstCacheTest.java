@@ -0,0 +1,158 @@
+package tests;
+
+import ast.Ast;
+import ast.AstCache;
+import ast.AstWriter;
+import lexer.LineMap;
+import parser.Parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Stores parsed programs in an ast.AstCache in a temporary directory and
+ * checks that a hit gives the same tree and lines as parsing the source
+ * again, and that an entry that is missing, of another source, truncated,
+ * changed or of another version is a miss. Exits with 1 on the first
+ * failure.
+ */
+public class AstCacheTest
+{
+    private static final String SOURCE = "class Main\n{\n    void main()\n    {\n"
+            + "        print(new A().f(10));\n    }\n}\n"
+            + "class A\n{\n    int x;\n"
+            + "    int f(int n)\n    {\n        int i;\n        i = 0;\n"
+            + "        while (i < n && !(x < 0))\n        {\n"
+            + "            x = x + i * 2 - 1;\n            i = i + 1;\n        }\n"
+            + "        return x;\n    }\n}\n";
+
+    private static void fail(String what)
+    {
+        System.out.println("FAILED " + what);
+        System.exit(1);
+    }
+
+    private static ByteBuffer bytes(String source)
+    {
+        return ByteBuffer.wrap(source.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static Ast.Program.T parse(String source, boolean lazy)
+    {
+        Parser parser = new Parser(bytes(source));
+        parser.lazyBodies = lazy;
+        return parser.parse();
+    }
+
+    private static void same(String name, Ast.Program.T expected, Ast.Program.T actual)
+    {
+        if (actual == null)
+            fail(name + ": a miss");
+        if (!Arrays.equals(AstWriter.encode(expected), AstWriter.encode(actual)))
+            fail(name + ": trees differ");
+        LineMap e = ((Ast.Program.ProgramSingle) expected).lines;
+        LineMap a = ((Ast.Program.ProgramSingle) actual).lines;
+        if (e.size() != a.size())
+            fail(name + ": lines differ");
+        for (int pos = 0; pos <= SOURCE.length(); pos++)
+            if (!e.position(pos).equals(a.position(pos)))
+                fail(name + ": offset " + pos + " is at " + a.position(pos)
+                        + " instead of " + e.position(pos));
+        System.out.println("ok " + name);
+    }
+
+    // the cache file is the only one in dir
+    private static Path entry(Path dir) throws IOException
+    {
+        try (Stream<Path> files = Files.list(dir))
+        {
+            return files.filter(f -> f.toString().endsWith(".ast")).findFirst()
+                    .orElseThrow(() -> new IllegalStateException("no cache file"));
+        }
+    }
+
+    private static void miss(String name, AstCache cache, String key)
+    {
+        if (cache.load(key) != null)
+            fail(name + ": not a miss");
+        System.out.println("ok " + name);
+    }
+
+    // an entry whose file holds bytes instead of what was stored
+    private static void rejects(String name, AstCache cache, String key,
+                                Path file, byte[] bytes) throws IOException
+    {
+        Files.write(file, bytes);
+        miss(name, cache, key);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Path dir = Files.createTempDirectory("astcache");
+        try
+        {
+            AstCache cache = new AstCache(dir);
+            for (boolean lazy : new boolean[]{false, true})
+            {
+                String key = AstCache.key(bytes(SOURCE), lazy);
+                String name = lazy ? "a hit, lazy bodies" : "a hit";
+                miss(name + ": before the store", cache, key);
+                cache.store(key, parse(SOURCE, lazy));
+                same(name, parse(SOURCE, lazy), cache.load(key));
+            }
+            if (AstCache.key(bytes(SOURCE), false).equals(AstCache.key(bytes(SOURCE), true)))
+                fail("the keys with and without lazy bodies are the same");
+            miss("a miss on another source", cache,
+                    AstCache.key(bytes(SOURCE.replace("10", "11")), false));
+
+            // a single entry, to spoil
+            String lazyKey = AstCache.key(bytes(SOURCE), true);
+            Files.delete(dir.resolve(lazyKey + ".ast"));
+            String key = AstCache.key(bytes(SOURCE), false);
+            Path file = entry(dir);
+            byte[] good = Files.readAllBytes(file);
+
+            rejects("an empty entry", cache, key, file, new byte[0]);
+            rejects("a truncated header", cache, key, file, Arrays.copyOf(good, 6));
+            rejects("a truncated entry", cache, key, file,
+                    Arrays.copyOf(good, good.length - 3));
+            byte[] longer = Arrays.copyOf(good, good.length + 1);
+            rejects("an entry with a byte more", cache, key, file, longer);
+            byte[] stale = good.clone();
+            stale[4]--; // the version
+            rejects("an entry of an older version", cache, key, file, stale);
+            byte[] magic = good.clone();
+            magic[0] = 'X';
+            rejects("an entry with a bad magic", cache, key, file, magic);
+            // every byte of the encoding flipped in turn
+            for (int i = 9; i < good.length; i++)
+            {
+                byte[] flipped = good.clone();
+                flipped[i] ^= 0x10;
+                Files.write(file, flipped);
+                if (cache.load(key) != null)
+                    fail("an entry with byte " + i + " changed: not a miss");
+            }
+            System.out.println("ok " + (good.length - 9) + " entries with a byte changed");
+            byte[] garbage = new byte[good.length];
+            for (int i = 0; i < garbage.length; i++)
+                garbage[i] = (byte) (i * 31 + 7);
+            rejects("garbage", cache, key, file, garbage);
+
+            Files.write(file, good);
+            same("the entry put back", parse(SOURCE, false), cache.load(key));
+        } finally
+        {
+            try (Stream<Path> files = Files.walk(dir))
+            {
+                files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package tests;
+
+import ast.Ast;
+import codegen.ByteCodeGenerator;
+import codegen.ClassFileWriter;
+import codegen.TranslatorVisitor;
+import optimize.Optimizer;
+import parser.Parser;
+import semantic.SemanticVisitor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Compiles programs as SimpleCompiler does, once into classes written by
+ * codegen.ClassFileWriter and once into jasmin listings assembled by
+ * jasmin, then loads each set of classes on its own, which verifies them,
+ * runs the main class and checks that both print the same. A program that
+ * dereferences null checks that the stack trace names its source file.
+ * Takes more .soo files to compare as arguments. The classes are written
+ * to the working directory and deleted after. Exits with 1 on the first
+ * difference.
+ */
+public class ClassFileWriterTest
+{
+    private static final String PROGRAM = "class Main\n{\n    void main()\n    {\n"
+            + "        print(new A().run(10));\n    }\n}\n"
+            + "class A\n{\n    int x;\n    boolean odd;\n"
+            + "    int run(int n)\n    {\n        int i;\n        int s;\n"
+            + "        i = 0;\n        s = 0;\n"
+            + "        while (i < n)\n        {\n"
+            + "            odd = !odd;\n"
+            + "            if (odd && i < 7) s = s + this.sq(i); else s = s - 1;\n"
+            + "            print(s);\n            i = i + 1;\n        }\n"
+            + "        x = new B().get(s, this);\n"
+            + "        return x * 2 - 3;\n    }\n"
+            + "    int sq(int k)\n    {\n        return k * k;\n    }\n}\n"
+            + "class B : A\n{\n    int get(int k, A a)\n    {\n"
+            + "        return k + a.sq(2);\n    }\n}\n";
+    // A.a is never set, so a.g() throws a NullPointerException in A.f
+    private static final String NULL_PROGRAM = "class Main\n{\n    void main()\n    {\n"
+            + "        print(new A().f());\n    }\n}\n"
+            + "class A\n{\n    A a;\n"
+            + "    int f()\n    {\n        return a.g();\n    }\n"
+            + "    int g()\n    {\n        return 1;\n    }\n}\n";
+
+    private static void fail(String what)
+    {
+        System.out.println("FAILED " + what);
+        System.exit(1);
+    }
+
+    private static codegen.ast.Ast.Program.ProgramSingle translate(String name, byte[] source)
+    {
+        Parser parser = new Parser(ByteBuffer.wrap(source));
+        Ast.Program.T prog = parser.parse();
+        if (!parser.isOK())
+            fail(name + ": " + parser.diagnostics());
+        SemanticVisitor checker = new SemanticVisitor();
+        checker.visit(prog);
+        if (!checker.isOK())
+            fail(name + ": semantic errors");
+        new Optimizer().optimize(prog);
+        TranslatorVisitor translator = new TranslatorVisitor(checker.annotations());
+        translator.visit(prog);
+        return translator.prog;
+    }
+
+    private static ArrayList<String> classNames(codegen.ast.Ast.Program.ProgramSingle prog)
+    {
+        ArrayList<String> names = new ArrayList<>();
+        names.add(prog.mainClass.id);
+        prog.classes.forEach(c -> names.add(c.id));
+        return names;
+    }
+
+    // what the main class of the classes in dir prints, after loading all
+    // the classes, or the exception it throws
+    private static Object run(Path dir, ArrayList<String> names) throws IOException
+    {
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        // the parent of the class path, so that only dir has the classes
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{dir.toUri().toURL()},
+                ClassLoader.getSystemClassLoader().getParent()))
+        {
+            for (String name : names)
+                Class.forName(name, true, loader);
+            System.setOut(new PrintStream(printed, true, "ISO-8859-1"));
+            Class.forName(names.get(0), true, loader).getMethod("main", String[].class)
+                    .invoke(null, (Object) new String[0]);
+        } catch (InvocationTargetException e)
+        {
+            return e.getCause();
+        } catch (ReflectiveOperationException | LinkageError e)
+        {
+            System.setOut(out);
+            fail(dir + ": " + e);
+        } finally
+        {
+            System.setOut(out);
+        }
+        return printed.toString("ISO-8859-1");
+    }
+
+    private static void delete(Path dir) throws IOException
+    {
+        try (Stream<Path> files = Files.walk(dir))
+        {
+            files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        }
+    }
+
+    // the output of both sets of classes of the program, which has to be
+    // the same
+    private static Object[] compile(String name, byte[] source) throws IOException
+    {
+        codegen.ast.Ast.Program.ProgramSingle prog = translate(name, source);
+        ArrayList<String> names = classNames(prog);
+        Path written = Files.createTempDirectory("classfile");
+        Path assembled = Files.createTempDirectory("jasmin");
+        PrintStream out = System.out;
+        try
+        {
+            // both tell every class they write
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            new ClassFileWriter(name).visit(prog);
+            new ByteCodeGenerator().visit(prog);
+            for (String c : names)
+            {
+                Files.move(Paths.get(c + ".class"), written.resolve(c + ".class"));
+                jasmin.Main.main(new String[]{"-d", assembled.toString(), c + ".il"});
+                Files.delete(Paths.get(c + ".il"));
+            }
+            System.setOut(out);
+            for (String c : names)
+                if (!Files.exists(assembled.resolve(c + ".class")))
+                    fail(name + ": jasmin did not assemble " + c);
+            return new Object[]{run(written, names), run(assembled, names)};
+        } finally
+        {
+            System.setOut(out);
+            delete(written);
+            delete(assembled);
+        }
+    }
+
+    private static void same(String name, byte[] source) throws IOException
+    {
+        Object[] outputs = compile(name, source);
+        if (!(outputs[0] instanceof String) || !outputs[0].equals(outputs[1]))
+        {
+            System.out.println("FAILED " + name + ": outputs differ");
+            System.out.println("  ClassFileWriter: " + outputs[0]);
+            System.out.println("  jasmin         : " + outputs[1]);
+            System.exit(1);
+        }
+        System.out.println("ok " + name + " (" + ((String) outputs[0]).split("\n").length
+                + " lines printed)");
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        same("Program.soo", PROGRAM.getBytes(StandardCharsets.ISO_8859_1));
+        for (String arg : args)
+            same(Paths.get(arg).getFileName().toString(), Files.readAllBytes(Paths.get(arg)));
+
+        Object[] thrown = compile("Null.soo", NULL_PROGRAM.getBytes(StandardCharsets.ISO_8859_1));
+        if (!(thrown[0] instanceof NullPointerException))
+            fail("Null.soo: " + thrown[0] + " instead of a NullPointerException");
+        StackTraceElement top = ((Throwable) thrown[0]).getStackTrace()[0];
+        if (!"A".equals(top.getClassName()) || !"Null.soo".equals(top.getFileName()))
+            fail("Null.soo: thrown at " + top);
+        System.out.println("ok Null.soo (thrown at " + top + ")");
+    }
+}
@@ -35,11 +35,16 @@ public class CodeGeneratorTest
 
         Parser parser = new Parser(fstream);
         Ast.Program.T prog = parser.parse();
+        if (!parser.isOK())
+        {
+            parser.diagnostics().forEach(System.out::println);
+            System.exit(1);
+        }
 
         SemanticVisitor checker = new SemanticVisitor();
         checker.visit(prog);
 
-        TranslatorVisitor translator = new TranslatorVisitor();
+        TranslatorVisitor translator = new TranslatorVisitor(checker.annotations());
         translator.visit(prog);
 
         ByteCodeGenerator generator = new ByteCodeGenerator();
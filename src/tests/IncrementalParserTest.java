@@ -0,0 +1,208 @@
+package tests;
+
+import ast.Ast;
+import ast.AstWriter;
+import parser.Parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Edits a program and parses the edit into the program parsed before, with
+ * Parser.edited, and checks that this gives the same tree, positions and
+ * lines included, as parsing the edited source from scratch, and that the
+ * edits within a method or class are spliced into the program before
+ * rather than parsed with the whole source, and that the nodes spliced in
+ * get nids no other node of the program has. Exits with 1 on the first
+ * difference.
+ */
+public class IncrementalParserTest
+{
+    private static final String SOURCE = "class Main\n{\n    void main()\n    {\n"
+            + "        print(new B().f(10, new A()));\n    }\n}\n"
+            + "class A\n{\n    int x;\n"
+            + "    int f(int n, A a)\n    {\n        int i;\n        i = 0;\n"
+            + "        while (i < n && !(x < 0))\n        {\n"
+            + "            x = x + i * 2 - 1;\n            i = i + 1;\n        }\n"
+            + "        return x;\n    }\n"
+            + "    int g(int k)\n    {\n        return k * 3;\n    }\n}\n"
+            + "class B : A\n{\n    boolean y;\n"
+            + "    int h(int k)\n    {\n        if (y) x = k; else x = 0 - k;\n"
+            + "        return this.g(x);\n    }\n}\n";
+
+    private static void fail(String what)
+    {
+        System.out.println("FAILED " + what);
+        System.exit(1);
+    }
+
+    private static ByteBuffer bytes(String source)
+    {
+        return ByteBuffer.wrap(source.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    // nids of the nodes walked so far, each below the nids of the program
+    private static BitSet nids;
+    private static int bound;
+
+    private static void nid(int nid)
+    {
+        if (nid < 0 || nid >= bound)
+            fail("nid " + nid + " out of the program's " + bound);
+        if (nids.get(nid))
+            fail("nid " + nid + " given twice");
+        nids.set(nid);
+    }
+
+    private static void nids(Ast.Exp.T e)
+    {
+        if (e instanceof Ast.Exp.Id)
+            nid(((Ast.Exp.Id) e).nid);
+        else if (e instanceof Ast.Exp.Call)
+        {
+            Ast.Exp.Call c = (Ast.Exp.Call) e;
+            nid(c.nid);
+            nids(c.exp);
+            c.args.forEach(IncrementalParserTest::nids);
+        } else if (e instanceof Ast.Exp.Not)
+            nids(((Ast.Exp.Not) e).exp);
+        else if (e instanceof Ast.Exp.Add)
+        {
+            nids(((Ast.Exp.Add) e).left);
+            nids(((Ast.Exp.Add) e).right);
+        } else if (e instanceof Ast.Exp.And)
+        {
+            nids(((Ast.Exp.And) e).left);
+            nids(((Ast.Exp.And) e).right);
+        } else if (e instanceof Ast.Exp.LT)
+        {
+            nids(((Ast.Exp.LT) e).left);
+            nids(((Ast.Exp.LT) e).right);
+        } else if (e instanceof Ast.Exp.Sub)
+        {
+            nids(((Ast.Exp.Sub) e).left);
+            nids(((Ast.Exp.Sub) e).right);
+        } else if (e instanceof Ast.Exp.Times)
+        {
+            nids(((Ast.Exp.Times) e).left);
+            nids(((Ast.Exp.Times) e).right);
+        }
+    }
+
+    private static void nids(Ast.Stm.T s)
+    {
+        if (s instanceof Ast.Stm.Assign)
+        {
+            nid(((Ast.Stm.Assign) s).nid);
+            nids(((Ast.Stm.Assign) s).exp);
+        } else if (s instanceof Ast.Stm.Block)
+            ((Ast.Stm.Block) s).stms.forEach(IncrementalParserTest::nids);
+        else if (s instanceof Ast.Stm.If)
+        {
+            Ast.Stm.If i = (Ast.Stm.If) s;
+            nids(i.condition);
+            nids(i.then_stm);
+            nids(i.else_stm);
+        } else if (s instanceof Ast.Stm.Print)
+            nids(((Ast.Stm.Print) s).exp);
+        else if (s instanceof Ast.Stm.While)
+        {
+            nids(((Ast.Stm.While) s).condition);
+            nids(((Ast.Stm.While) s).body);
+        }
+    }
+
+    // every nid in p is its own and below p.nids
+    private static void checkNids(String name, Ast.Program.T p)
+    {
+        Ast.Program.ProgramSingle program = (Ast.Program.ProgramSingle) p;
+        nids = new BitSet();
+        bound = program.nids;
+        nids(((Ast.MainClass.MainClassSingle) program.mainClass).stm);
+        for (Ast.Class.T c : program.classes)
+            for (Ast.Method.T t : ((Ast.Class.ClassSingle) c).methods)
+            {
+                Ast.Method.MethodSingle m = (Ast.Method.MethodSingle) t;
+                m.stms.forEach(IncrementalParserTest::nids);
+                nids(m.retExp);
+            }
+        if (nids.isEmpty())
+            fail(name + ": no nids");
+    }
+
+    // the source after the edit
+    private static String edited;
+    // the program it parses to
+    private static Ast.Program.T program;
+
+    // replace the first old after anchor in the source by now, parse the edit
+    // into program, and compare it with a parse of the edited source
+    private static void edit(String name, String anchor, String old, String now,
+                             boolean spliced)
+    {
+        String source = edited;
+        int start = source.indexOf(old, source.indexOf(anchor));
+        if (source.indexOf(anchor) < 0 || start < 0)
+            fail(name + ": no " + old + " after " + anchor);
+        edited = source.substring(0, start) + now + source.substring(start + old.length());
+
+        Parser parser = Parser.edited(program, bytes(edited), start,
+                start + old.length(), start + now.length());
+        Ast.Program.T actual = parser.parse();
+        Parser fresh = new Parser(bytes(edited));
+        Ast.Program.T expected = fresh.parse();
+
+        if (!parser.diagnostics().equals(fresh.diagnostics()))
+        {
+            System.out.println("FAILED " + name + ": diagnostics differ");
+            System.out.println("  edited: " + parser.diagnostics());
+            System.out.println("  parsed: " + fresh.diagnostics());
+            System.exit(1);
+        }
+        // the encoding has every node, position and line, see ast.AstWriter
+        if (!Arrays.equals(AstWriter.encode(expected), AstWriter.encode(actual)))
+            fail(name + ": trees differ");
+        if ((actual == program) != spliced)
+            fail(name + (spliced ? ": parsed whole" : ": spliced"));
+        checkNids(name, actual);
+        program = actual;
+        System.out.println("ok " + name + (spliced ? ", spliced" : ", parsed whole"));
+    }
+
+    public static void main(String[] args)
+    {
+        edited = SOURCE;
+        program = new Parser(bytes(edited)).parse();
+
+        // within a method, growing, shrinking and over several lines
+        edit("a statement inside a method", "int f(", "i = i + 1;",
+                "i = i + 2;\n            x = x - 1;", true);
+        edit("an expression inside a method", "int f(", "i * 2", "i", true);
+        edit("a line more inside the last method", "int h(", "return",
+                "y = !y;\n        return", true);
+        edit("inside the main method", "void main", "10", "12345", true);
+        edit("the condition of a while", "int f(", "!(x < 0)", "i < x", true);
+        // across a method boundary, parsed as its class
+        edit("across two methods", "int f(", "return x;\n    }\n    int g(int k)",
+                "return x + 1;\n    }\n    int g(int k, int j)", true);
+        edit("a method removed", "class A", "    int g(int k, int j)\n    {\n"
+                + "        return k * 3;\n    }\n", "", true);
+        edit("a method added", "class B", "    int h(", "    int m()\n    {\n"
+                + "        return 1;\n    }\n    int h(", true);
+        // in a class header
+        edit("the class extended", "class B", ": A", ": Main", true);
+        edit("the class no longer extending", "class B", " : Main", "", true);
+        edit("a field added", "class A", "int x;", "int x;\n    boolean z;", true);
+        edit("the name of a class", "class A", "class A", "class C", false);
+        edit("the name back", "class C", "class C", "class A", false);
+        // edits that reach out of their class, and errors, after which
+        // the program is no longer one to edit
+        edit("a class split in two", "class A", "    int f(",
+                "}\nclass D\n{\n    int f(", false);
+        edit("before the first class", "class Main", "class Main", "\n\nclass Main", false);
+        edit("then inside it again", "void main", "12345", "7", true);
+        edit("a syntax error", "int f(", "i = 0;", "i = ;", false);
+    }
+}
@@ -0,0 +1,98 @@
+package tests;
+
+import lexer.Keywords;
+import lexer.Token.Kind;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Compares the keyword table with the old String switch on an identifier
+ * dense input. There is no build for JMH here, so this warms up and times
+ * both by hand; run it with nothing else on the machine.
+ */
+public class KeywordBenchmark
+{
+    private static final String[] WORDS = {
+            "boolean", "class", "else", "false", "if", "int", "main", "new",
+            "print", "return", "this", "true", "void", "while",
+            "i", "x", "sum", "index", "counter", "total", "num_aux", "tree",
+            "ComputeFac", "thisOne", "newValue", "intValue", "whileLoop", "value"
+    };
+
+    private static Kind switchLookup(ByteBuffer buf, int start, int length)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = start; i < start + length; i++)
+            sb.append((char) buf.get(i));
+        switch (sb.toString())
+        {
+            case "boolean": return Kind.Boolean;
+            case "class": return Kind.Class;
+            case "else": return Kind.Else;
+            case "false": return Kind.False;
+            case "if": return Kind.If;
+            case "int": return Kind.Int;
+            case "main": return Kind.Main;
+            case "new": return Kind.New;
+            case "print": return Kind.Print;
+            case "return": return Kind.Return;
+            case "this": return Kind.This;
+            case "true": return Kind.True;
+            case "void": return Kind.Void;
+            case "while": return Kind.While;
+            default: return null;
+        }
+    }
+
+    private static long run(ByteBuffer buf, int[] starts, int[] lengths, boolean table)
+    {
+        long hits = 0;
+        for (int i = 0; i < starts.length; i++)
+        {
+            Kind k = table ? Keywords.lookup(buf, starts[i], lengths[i])
+                    : switchLookup(buf, starts[i], lengths[i]);
+            if (k != null) hits += k.ordinal();
+        }
+        return hits;
+    }
+
+    public static void main(String[] args)
+    {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(42);
+        StringBuilder source = new StringBuilder();
+        int[] starts = new int[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            String w = WORDS[random.nextInt(WORDS.length)];
+            starts[i] = source.length();
+            lengths[i] = w.length();
+            source.append(w).append(' ');
+        }
+        ByteBuffer buf = ByteBuffer.wrap(source.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+        if (run(buf, starts, lengths, true) != run(buf, starts, lengths, false))
+        {
+            System.out.println("The keyword table and the switch disagree!");
+            System.exit(1);
+        }
+
+        for (String name : new String[]{"switch", "table"})
+        {
+            boolean table = name.equals("table");
+            for (int i = 0; i < 10; i++) // warm up
+                run(buf, starts, lengths, table);
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < 10; i++)
+            {
+                long t = System.nanoTime();
+                run(buf, starts, lengths, table);
+                best = Math.min(best, System.nanoTime() - t);
+            }
+            System.out.printf("%-6s : %.2f ns/word%n", name, (double) best / count);
+        }
+    }
+}
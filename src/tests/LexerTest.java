@@ -36,7 +36,8 @@ public class LexerTest
         do
         {
             current = lexer.nextToken();
-            System.out.println(current.toString());
+            System.out.println(current.toString() + " : at line "
+                    + lexer.lines().position(lexer.tokenPos()));
         } while (current.kind != Token.Kind.EOF);
 
     }
@@ -0,0 +1,71 @@
+package tests;
+
+import ast.Ast;
+import optimize.Optimizer;
+import parser.Parser;
+import semantic.SemanticVisitor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Times a full pass of the optimizer, its fused local rewrites and its two
+ * dataflow passes, over many methods dense in the nodes they dispatch on. The program is checked
+ * and optimized once first; optimizing it again then walks it just once,
+ * as nothing is left to change. There is no build for JMH here, so this
+ * warms up and times by hand.
+ */
+public class OptimizerBenchmark
+{
+    private static String source(int classes)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class Main\n{\n    void main()\n    {\n")
+                .append("        print(new C0().run(7));\n    }\n}\n");
+        for (int c = 0; c < classes; c++)
+        {
+            sb.append("class C").append(c).append("\n{\n    int f;\n")
+                    .append("    int run(int n)\n    {\n")
+                    .append("        int i;\n        int sum;\n        boolean flag;\n")
+                    .append("        i = 0;\n        sum = 0;\n        flag = true;\n")
+                    .append("        while (i < n)\n        {\n")
+                    .append("            if (flag && !(sum < 10) && true)\n")
+                    .append("                sum = sum + i * n * (i - 1);\n")
+                    .append("            else\n                sum = sum * 2 + i * i;\n")
+                    .append("            i = i + 1;\n")
+                    .append("            flag = !flag && (true && !(i < n));\n")
+                    .append("        }\n")
+                    .append("        f = sum * i * (n - i) * (sum - n);\n")
+                    .append("        return f + i * sum;\n    }\n}\n");
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args)
+    {
+        int classes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        byte[] bytes = source(classes).getBytes(StandardCharsets.ISO_8859_1);
+        Parser parser = new Parser(ByteBuffer.wrap(bytes));
+        Ast.Program.T prog = parser.parse();
+        SemanticVisitor checker = new SemanticVisitor();
+        checker.visit(prog);
+        if (!parser.isOK() || !checker.isOK())
+        {
+            System.out.println("The benchmark program does not compile!");
+            System.exit(1);
+        }
+
+        Optimizer optimizer = new Optimizer();
+        for (int i = 0; i < 10; i++) // warm up, and reach the fixed point
+            optimizer.optimize(prog);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++)
+        {
+            long t = System.nanoTime();
+            optimizer.optimize(prog);
+            best = Math.min(best, System.nanoTime() - t);
+        }
+        System.out.printf("optimizer pass : %d methods, %.2f ms, %.2f us/method%n",
+                classes, best / 1e6, best / 1e3 / classes);
+    }
+}
@@ -37,6 +37,11 @@ public class OptimizerTest
 
         Parser parser = new Parser(fstream);
         Ast.Program.T prog = parser.parse();
+        if (!parser.isOK())
+        {
+            parser.diagnostics().forEach(System.out::println);
+            System.exit(1);
+        }
 
         SemanticVisitor checker = new SemanticVisitor();
         checker.visit(prog);
@@ -0,0 +1,100 @@
+package tests;
+
+import ast.Ast;
+import ast.AstWriter;
+import parser.Parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parses programs with their classes split among parallel parsers, by
+ * lowering Parser.minParallel, and one class after another, and checks
+ * that both give the same tree, positions included, and the same
+ * diagnostics. Exits with 1 on the first difference.
+ */
+public class ParallelParserTest
+{
+    private static String source(int classes, int broken)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class Main\n{\n    void main()\n    {\n")
+                .append("        print(new C0().run(3, new C1()));\n    }\n}\n");
+        for (int c = 0; c < classes; c++)
+        {
+            sb.append("class C").append(c);
+            if (c > 0)
+                sb.append(" : C").append(c - 1);
+            sb.append("\n{\n    int f").append(c).append(";\n    boolean g;\n")
+                    .append("    int run(int n, C1 o)\n    {\n")
+                    .append("        int i;\n        int s;\n")
+                    .append("        i = 0;\n        s = n * (2 - i);\n")
+                    .append("        while (i < n && !g)\n        {\n")
+                    .append("            if (s < 10) { s = s + o.get(i, this); }\n")
+                    .append("            else s = s - 1;\n")
+                    .append("            i = i + 1;\n        }\n");
+            if (c % 13 == broken) // a syntax error in every 13th class
+                sb.append("        s = s + ;\n");
+            sb.append("        return s + f").append(c).append(";\n    }\n")
+                    .append("    int get(int k, C0 p)\n    {\n")
+                    .append("        return k;\n    }\n}\n");
+        }
+        return sb.toString();
+    }
+
+    private static Parser parser(String source, boolean parallel, boolean lazy)
+    {
+        Parser parser = new Parser(ByteBuffer.wrap(source.getBytes(StandardCharsets.ISO_8859_1)));
+        parser.minParallel = parallel ? 0 : Integer.MAX_VALUE;
+        parser.lazyBodies = lazy;
+        return parser;
+    }
+
+    private static void check(String name, String source, boolean lazy)
+    {
+        Parser sequential = parser(source, false, lazy);
+        Ast.Program.T expected = sequential.parse();
+        Parser parallel = parser(source, true, lazy);
+        Ast.Program.T actual = parallel.parse();
+        // the encoding has every node and position, see ast.AstWriter. It
+        // walks the lazy bodies too, which adds their syntax errors
+        byte[] expectedBytes = AstWriter.encode(expected);
+        byte[] actualBytes = AstWriter.encode(actual);
+
+        if (!parallel.diagnostics().equals(sequential.diagnostics()))
+        {
+            System.out.println("FAILED " + name + ": diagnostics differ");
+            System.out.println("  sequential: " + sequential.diagnostics());
+            System.out.println("  parallel  : " + parallel.diagnostics());
+            System.exit(1);
+        }
+        if (!Arrays.equals(expectedBytes, actualBytes))
+        {
+            System.out.println("FAILED " + name + ": trees differ");
+            System.exit(1);
+        }
+        System.out.println("ok " + name + " (" + sequential.diagnostics().size()
+                + " diagnostics)");
+    }
+
+    public static void main(String[] args)
+    {
+        // the parallel parse needs a pool of two threads at least
+        if (System.getProperty("java.util.concurrent.ForkJoinPool.common.parallelism") == null)
+            System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism", "4");
+        if (ForkJoinPool.getCommonPoolParallelism() < 2)
+        {
+            System.out.println("FAILED: the common pool has a single thread");
+            System.exit(1);
+        }
+
+        check("one class", source(1, -1), false);
+        check("many classes", source(60, -1), false);
+        check("many classes, lazy bodies", source(60, -1), true);
+        check("syntax errors", source(60, 5), false);
+        check("syntax errors, lazy bodies", source(60, 5), true);
+        check("unclosed last class", source(20, -1) + "class D { int x; ", false);
+    }
+}
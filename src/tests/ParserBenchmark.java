@@ -0,0 +1,79 @@
+package tests;
+
+import lexer.TokenBuffer;
+import parser.Parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Times the parser alone on methods with many locals, where every
+ * declaration has to be told apart from the assignments after it, and on
+ * long operator chains and nested parentheses. Each source is lexed once
+ * and parsed again and again from its TokenBuffer. There is no build for
+ * JMH here, so this warms up and times by hand.
+ */
+public class ParserBenchmark
+{
+    private static String source(int methods, int locals)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class Main\n{\n    void main()\n    {\n")
+                .append("        print(new A().m0(1));\n    }\n}\n");
+        sb.append("class A\n{\n");
+        for (int m = 0; m < methods; m++)
+        {
+            sb.append("    int m").append(m).append("(int a)\n    {\n");
+            for (int l = 0; l < locals; l++)
+                sb.append(l % 3 == 0 ? "        A v" : l % 3 == 1
+                        ? "        int v" : "        boolean v").append(l).append(";\n");
+            for (int l = 0; l < locals; l += 3)
+                sb.append("        v").append(l).append(" = this;\n");
+            sb.append("        return a;\n    }\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static String expressions(int statements, int length)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class Main\n{\n    void main()\n    {\n        {\n");
+        for (int s = 0; s < statements; s++)
+        {
+            sb.append("            x = ");
+            for (int i = 0; i < length; i++)
+                sb.append(i % 4 == 0 ? "(a - 1) * " : i % 4 == 1 ? "!b && "
+                        : i % 4 == 2 ? "a < 1 + " : "this.f(a, (((a)))) - ");
+            sb.append("1;\n");
+        }
+        sb.append("        }\n    }\n}\n");
+        return sb.toString();
+    }
+
+    private static void time(String name, String source)
+    {
+        byte[] bytes = source.getBytes(StandardCharsets.ISO_8859_1);
+        TokenBuffer tokens = TokenBuffer.lex(ByteBuffer.wrap(bytes));
+
+        for (int i = 0; i < 10; i++) // warm up
+            new Parser(tokens).parse();
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++)
+        {
+            long t = System.nanoTime();
+            new Parser(tokens).parse();
+            best = Math.min(best, System.nanoTime() - t);
+        }
+        System.out.printf("%-11s : %d tokens, %.2f ms, %.2f ns/token%n", name,
+                tokens.size(), best / 1e6, (double) best / tokens.size());
+    }
+
+    public static void main(String[] args)
+    {
+        int methods = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int locals = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        time("locals", source(methods, locals));
+        time("expressions", expressions(methods * 10, locals / 3));
+    }
+}
@@ -7,14 +7,159 @@ import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Created by Mengxu on 2017/1/12.
+ * Prints the tree of a file, or with -check, checks the syntax errors
+ * the parser reports and that it never exits or throws on bad input.
  */
 public class ParserTest
 {
+    // programs with syntax errors, each followed by the exact diagnostics
+    // one parse of it has to report
+    private static final String[][] errorCases = {
+            {"class Main\n{\n    void main()\n    {\n        print(new A().f(1));\n    }\n}\n"
+                    + "class A\n{\n    int x;\n    int f(int a)\n    {\n        int b;\n"
+                    + "        b = a + ;\n"
+                    + "        if (a < 1) { b = 2 } else b = 3;\n"
+                    + "        while (b < ) { b = b + 1; }\n"
+                    + "        return b;\n    }\n"
+                    + "    int g( { return 1; }\n"
+                    + "    int h() { { { x = ; } } return 2; }\n}\n"
+                    + "class B : { int y; }\n"
+                    + "class C\n{\n    int k() { return 1 }\n}\n",
+                    "Syntax error at line 14:17 compilation aborting...\n",
+                    "Line 15:28 :Expects: Semi, but got: Rbrace",
+                    "Syntax error at line 16:20 compilation aborting...\n",
+                    "Line 19:12 :Expects: Rparen, but got: Lbrace",
+                    "Syntax error at line 20:23 compilation aborting...\n",
+                    "Line 22:11 :Expects: ID, but got: Lbrace",
+                    "Line 25:24 :Expects: Semi, but got: Rbrace"},
+            // the method and its class both miss their }
+            {"class Main { void main() { print(1) } }\n"
+                    + "class A { int f() { int a; a = 1; return a;\n",
+                    "Line 1:37 :Expects: Semi, but got: Rbrace",
+                    "Line 3:1 :Expects: Rbrace, but got: EOF",
+                    "Line 3:1 :Expects: Rbrace, but got: EOF"},
+            // a missing } puts the else in the block, and the return in the if
+            {"class Main { void main() { print(1); } }\n"
+                    + "class A { int g() { if (true) { a = 1; else a = 2; } return 1; } }\n"
+                    + "class { int z; }\n"
+                    + "class D { int m(int a, ) { return a; } boolean n() { return true && ; } }\n",
+                    "Line 2:40 :Expects: Rbrace, but got: Else",
+                    "Line 2:54 :Expects: Else, but got: Return",
+                    "Line 2:64 :Expects: Return, but got: Rbrace",
+                    "Line 3:7 :Expects: ID, but got: Lbrace",
+                    "Syntax error at line 4:24 compilation aborting...\n",
+                    "Syntax error at line 4:69 compilation aborting...\n"},
+            {"class Main { void main() { print(1); } }\nclass A :",
+                    "Line 2:10 :Expects: ID, but got: EOF"},
+            {"clas Main { void main() { print(1); } }\nclass A { int f() { return 1; } }\n",
+                    "Line 1:1 :Expects: Class, but got: ID"},
+            {"",
+                    "Line 1:1 :Expects: Class, but got: EOF"},
+            {"class Main { void main() { x = ; } }\n"
+                    + "class A { int f() { return 1; } int g() { return (1 + ; } }\n",
+                    "Syntax error at line 1:32 compilation aborting...\n",
+                    "Syntax error at line 2:55 compilation aborting...\n"},
+            {"class Main { void main() { { { print(1); } }\nclass A { int f() { return 1; } }\n",
+                    "Line 2:1 :Expects: Rbrace, but got: Class"},
+    };
+
+    // cut and taken apart token by token, each time without a throw
+    private static final String program =
+            "class Main { void main() { print(new A().f(3, new B())); } }\n"
+                    + "class A { int x; B b;\n"
+                    + "  int f(int n, B o) { int i; boolean d; i = 0; d = true && !(n < 2);\n"
+                    + "    while (i < n) { if (d) { x = x + o.g(i) * (n - 1); } else i = i + 1;"
+                    + " i = i + 1; }\n"
+                    + "    { print(x); } return x; } }\n"
+                    + "class B : A { int g(int k) { return k; } }\n";
+
+    private static Parser parser(String source)
+    {
+        return new Parser(ByteBuffer.wrap(source.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    // the words, numbers, && and single characters of source, by offset
+    private static ArrayList<int[]> tokens(String source)
+    {
+        ArrayList<int[]> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < source.length())
+        {
+            char c = source.charAt(i);
+            int end = i + 1;
+            if (Character.isLetterOrDigit(c))
+                while (end < source.length() && Character.isLetterOrDigit(source.charAt(end)))
+                    end++;
+            else if (c == '&')
+                end = i + 2;
+            if (!Character.isWhitespace(c))
+                tokens.add(new int[]{i, end});
+            i = end;
+        }
+        return tokens;
+    }
+
+    private static boolean parses(String source)
+    {
+        try
+        {
+            Parser parser = parser(source);
+            return parser.parse() != null;
+        } catch (RuntimeException | StackOverflowError e)
+        {
+            System.out.println("FAILED: " + e + " on:\n" + source);
+            return false;
+        }
+    }
+
+    private static void check()
+    {
+        int failed = 0;
+        for (String[] c : errorCases)
+        {
+            Parser parser = parser(c[0]);
+            parser.parse();
+            List<String> expected = Arrays.asList(c).subList(1, c.length);
+            if (!parser.diagnostics().equals(expected))
+            {
+                failed++;
+                System.out.println("FAILED on:\n" + c[0]);
+                System.out.println("  expected: " + expected);
+                System.out.println("  reported: " + parser.diagnostics());
+            }
+        }
+
+        ArrayList<int[]> tokens = tokens(program);
+        for (int[] t : tokens)
+        {
+            if (!parses(program.substring(0, t[0])))
+                failed++;
+            if (!parses(program.substring(0, t[0]) + program.substring(t[1])))
+                failed++;
+        }
+
+        if (failed > 0)
+            System.exit(1);
+        System.out.println("ok " + errorCases.length + " programs with syntax errors, "
+                + tokens.size() + " cut and " + tokens.size() + " without a token");
+    }
+
     public static void main(String[] args)
     {
+        if (args.length > 0 && args[0].equals("-check"))
+        {
+            check();
+            return;
+        }
+
         final String fname;
         if (args.length > 0)
             fname = args[0];
@@ -32,6 +177,12 @@ public class ParserTest
 
         AstPrintVisitor visitor = new AstPrintVisitor();
         Parser parser = new Parser(fstream);
-        visitor.visit(((Ast.Program.ProgramSingle) parser.parse()));
+        Ast.Program.T prog = parser.parse();
+        if (!parser.isOK())
+        {
+            parser.diagnostics().forEach(System.out::println);
+            System.exit(1);
+        }
+        visitor.visit(((Ast.Program.ProgramSingle) prog));
     }
 }
@@ -33,6 +33,11 @@ public class SemanticTest
 
         Parser parser = new Parser(fstream);
         Ast.Program.T prog = parser.parse();
+        if (!parser.isOK())
+        {
+            parser.diagnostics().forEach(System.out::println);
+            System.exit(1);
+        }
 
         SemanticVisitor visitor = new SemanticVisitor();
         visitor.visit(prog);